@@ -0,0 +1,101 @@
+package org.jiabin.starter.module.practice.loadbalancer;
+
+import com.alibaba.cloud.nacos.ribbon.NacosServer;
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.Server;
+import org.jiabin.starter.module.practice.enums.GrayStatusEnum;
+import org.jiabin.starter.module.practice.holder.GrayFlagRequestHolder;
+import org.jiabin.starter.module.practice.properties.GrayVersionProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 灰度路由完整决策路径基准测试：请求头灰度标记解析 -> 设置线程灰度标记 -> 负载均衡规则按版本选择服务 -> 清除标记
+ * 服务一半为生产版本、一半为灰度版本，负载均衡器与规则的组装方式与 Ribbon 一致（服务列表变化时通知规则）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GrayLoadBalancerBenchmark {
+
+    private static final String PROD_VERSION = "1.0";
+
+    private static final String GRAY_VERSION = "1.1";
+
+    /**
+     * 请求头中的灰度标记
+     */
+    @Param({"PROD", "GRAY", "ALL"})
+    private String header;
+
+    @Param({"roundRobin", "random"})
+    private String rule;
+
+    @Param({"10", "100"})
+    private int serverCount;
+
+    private AbstractGrayLoadBalancerRule loadBalancerRule;
+
+    @Setup
+    public void setup() {
+        loadBalancerRule = "random".equals(rule) ? new GrayRandomRule() : new GrayRoundRobinRule();
+        GrayVersionProperties grayVersionProperties = new GrayVersionProperties();
+        grayVersionProperties.setProdVersion(PROD_VERSION);
+        grayVersionProperties.setGrayVersion(GRAY_VERSION);
+        setField(loadBalancerRule, "grayVersionProperties", grayVersionProperties);
+        setField(loadBalancerRule, "metaVersion", PROD_VERSION);
+
+        List<Server> serverList = new ArrayList<>(serverCount);
+        for (int i = 0; i < serverCount; i++) {
+            Instance instance = new Instance();
+            instance.setIp("10.0." + i / 256 + "." + i % 256);
+            instance.setPort(8080);
+            instance.setHealthy(true);
+            instance.setMetadata(Collections.singletonMap("version", i % 2 == 0 ? PROD_VERSION : GRAY_VERSION));
+            serverList.add(new NacosServer(instance));
+        }
+        // 不设置 IPing 时服务全部视为可用
+        BaseLoadBalancer loadBalancer = new BaseLoadBalancer(null, loadBalancerRule);
+        loadBalancer.addServers(serverList);
+    }
+
+    /**
+     * 与 GrayMvcHandlerInterceptor 相同的设置、清除方式
+     */
+    @Benchmark
+    public Server choose() {
+        GrayFlagRequestHolder.setGrayTag(GrayStatusEnum.getByVal(header));
+        try {
+            return loadBalancerRule.choose(null);
+        } finally {
+            GrayFlagRequestHolder.remove();
+        }
+    }
+
+    private static void setField(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(AbstractGrayLoadBalancerRule.class, name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.jiabin.starter.module.practice.async;
+
+import org.jiabin.starter.module.practice.constant.GrayConstant;
+import org.jiabin.starter.module.practice.enums.GrayStatusEnum;
+import org.jiabin.starter.module.practice.holder.GrayFlagRequestHolder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+/**
+ * 消息灰度标记传递（Spring Messaging / Spring Cloud Stream，与具体的 MQ 无关）
+ * 发送消息时：当前线程有灰度标记且消息头中没有时，将灰度标记写入消息头；
+ * 消费消息时：消息头中有灰度标记时，在处理消息的线程上设置灰度标记，处理完成后恢复，消费者中的 Feign 调用会继续使用该标记。
+ * 同步通道在发送线程上处理消息（preSend / afterSendCompletion），异步通道在执行器线程上处理消息（beforeHandle / afterMessageHandled）
+ */
+public class GrayChannelInterceptor implements ExecutorChannelInterceptor {
+
+    /**
+     * 当前线程上设置灰度标记前的值（消费者中可能继续发送消息，按栈处理）
+     */
+    private static final ThreadLocal<Frame> frameHolder = new ThreadLocal<>();
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        GrayStatusEnum tag = getHeaderTag(message);
+        if (tag != null) {
+            // 订阅通道在发送线程上同步处理消息，在这里设置灰度标记
+            push(tag);
+            return message;
+        }
+        tag = GrayFlagRequestHolder.getGrayTag();
+        if (tag == null) {
+            return message;
+        }
+        // 写入消息头后同样入栈（标记不变），保证 afterSendCompletion 按消息头出栈时与 preSend 一一对应
+        push(tag);
+        // 消息头可修改时直接写入，否则复制消息
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, MessageHeaderAccessor.class);
+        if (accessor != null && accessor.isMutable()) {
+            accessor.setHeader(GrayConstant.GRAY_HEADER, tag.getVal());
+            return message;
+        }
+        return MessageBuilder.fromMessage(message).setHeader(GrayConstant.GRAY_HEADER, tag.getVal()).build();
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        // 后续拦截器可能替换了消息对象，按消息头判断而不是按对象判断
+        if (getHeaderTag(message) != null) {
+            pop();
+        }
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        GrayStatusEnum tag = getHeaderTag(message);
+        if (tag != null) {
+            push(tag);
+        }
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+                                    Exception ex) {
+        if (getHeaderTag(message) != null) {
+            pop();
+        }
+    }
+
+    private GrayStatusEnum getHeaderTag(Message<?> message) {
+        Object header = message.getHeaders().get(GrayConstant.GRAY_HEADER);
+        if (header == null) {
+            return null;
+        }
+        return header instanceof GrayStatusEnum ? (GrayStatusEnum) header : GrayStatusEnum.getByVal(header.toString());
+    }
+
+    private void push(GrayStatusEnum tag) {
+        frameHolder.set(new Frame(GrayFlagRequestHolder.replace(tag), frameHolder.get()));
+    }
+
+    private void pop() {
+        Frame frame = frameHolder.get();
+        if (frame == null) {
+            return;
+        }
+        GrayFlagRequestHolder.replace(frame.previous);
+        if (frame.parent == null) {
+            frameHolder.remove();
+        } else {
+            frameHolder.set(frame.parent);
+        }
+    }
+
+    private static final class Frame {
+
+        private final GrayStatusEnum previous;
+
+        private final Frame parent;
+
+        private Frame(GrayStatusEnum previous, Frame parent) {
+            this.previous = previous;
+            this.parent = parent;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.jiabin.starter.module.practice.async;
+
+import org.jiabin.starter.module.practice.holder.GrayFlagRequestHolder;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 传递灰度标记的线程池包装
+ * 用于 CompletableFuture.supplyAsync(supplier, executor) 等直接使用 Executor 的场景，
+ * 例如 CompletableFuture.supplyAsync(() -> userClient.get(id), new GrayExecutor(executor))
+ */
+public class GrayExecutor implements Executor {
+
+    private final Executor delegate;
+
+    public GrayExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * 包装线程池，已包装的直接返回
+     */
+    public static Executor wrap(Executor executor) {
+        return executor instanceof GrayExecutor ? executor : new GrayExecutor(executor);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(GrayFlagRequestHolder.wrap(command));
+    }
+}
@@ -0,0 +1,16 @@
+package org.jiabin.starter.module.practice.async;
+
+import org.jiabin.starter.module.practice.holder.GrayFlagRequestHolder;
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * 线程池任务装饰器，将提交任务线程上的灰度标记传递到执行任务的线程
+ * Spring Boot 的默认线程池（@Async）会自动使用容器中的 TaskDecorator，自定义的 ThreadPoolTaskExecutor 需要调用 setTaskDecorator
+ */
+public class GrayTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        return GrayFlagRequestHolder.wrap(runnable);
+    }
+}
@@ -1,19 +1,35 @@
 package org.jiabin.starter.module.practice.config;
 
-import org.jiabin.starter.module.practice.filter.GrayGatewayAfterFilter;
+import org.jiabin.starter.module.practice.async.GrayChannelInterceptor;
+import org.jiabin.starter.module.practice.async.GrayTaskDecorator;
 import org.jiabin.starter.module.practice.filter.GrayGatewayBeginFilter;
+import org.jiabin.starter.module.practice.filter.GrayLoadBalancerClientFilter;
 import org.jiabin.starter.module.practice.handler.GrayGatewayExceptionHandler;
 import org.jiabin.starter.module.practice.interceptor.GrayFeignRequestInterceptor;
 import org.jiabin.starter.module.practice.interceptor.GrayMvcHandlerInterceptor;
+import org.jiabin.starter.module.practice.metrics.GrayCanaryAnalyzer;
+import org.jiabin.starter.module.practice.metrics.GrayMetricsBinder;
+import org.jiabin.starter.module.practice.metrics.GrayVersionStats;
 import org.jiabin.starter.module.practice.properties.GrayGatewayProperties;
 import org.jiabin.starter.module.practice.properties.GrayVersionProperties;
+import org.jiabin.starter.module.practice.rule.GrayCityResolver;
+import org.jiabin.starter.module.practice.rule.LocalGrayCityResolver;
 import feign.RequestInterceptor;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.gateway.config.LoadBalancerProperties;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.integration.config.GlobalChannelInterceptor;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -22,6 +38,9 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 // 可以通过@ConditionalOnProperty设置是否开启灰度自动配置 默认是不加载的
 @ConditionalOnProperty(value = "kerwin.tool.gray.load",havingValue = "true")
 @EnableConfigurationProperties(GrayVersionProperties.class)
+// 需要在网关默认的负载均衡过滤器之前注册灰度负载均衡过滤器
+@AutoConfigureAfter(name = "org.springframework.cloud.netflix.ribbon.RibbonAutoConfiguration")
+@AutoConfigureBefore(name = "org.springframework.cloud.gateway.config.GatewayLoadBalancerClientAutoConfiguration")
 public class GrayAutoConfiguration {
 
 
@@ -33,15 +52,61 @@ public class GrayAutoConfiguration {
         public GrayGatewayBeginFilter grayGatewayBeginFilter() {
             return new GrayGatewayBeginFilter();
         }
+
+        /**
+         * 按城市灰度的城市解析，可以注册自己的实现替换
+         * @return GrayCityResolver
+         */
         @Bean
-        public GrayGatewayAfterFilter grayGatewayAfterFilter() {
-            return new GrayGatewayAfterFilter();
+        @ConditionalOnMissingBean
+        public GrayCityResolver grayCityResolver() {
+            return new LocalGrayCityResolver();
+        }
+
+        /**
+         * 灰度版本自动回滚分析，kerwin.tool.gray.gateway.auto-rollback 启动时开启才注册（不启动分析线程）
+         * @return GrayCanaryAnalyzer
+         */
+        @Bean
+        @ConditionalOnProperty(value = "kerwin.tool.gray.gateway.auto-rollback", havingValue = "true")
+        public GrayCanaryAnalyzer grayCanaryAnalyzer() {
+            return new GrayCanaryAnalyzer();
         }
 
         @Bean
         public GrayGatewayExceptionHandler grayGatewayExceptionHandler(){
             return new GrayGatewayExceptionHandler();
         }
+
+        /**
+         * 使用 Ribbon 时（spring.cloud.loadbalancer.ribbon.enabled 未关闭）的网关负载均衡
+         */
+        @Configuration(proxyBeanMethods = false)
+        @ConditionalOnClass(name = "org.springframework.cloud.netflix.ribbon.RibbonLoadBalancerClient")
+        @ConditionalOnProperty(value = "spring.cloud.loadbalancer.ribbon.enabled", matchIfMissing = true)
+        static class GrayGatewayRibbonAutoConfiguration {
+            /**
+             * 替换网关默认的 Ribbon 负载均衡过滤器，选择服务实例时使用 exchange 中的灰度标记
+             * @return GrayLoadBalancerClientFilter
+             */
+            @Bean
+            @ConditionalOnBean(LoadBalancerClient.class)
+            public GrayLoadBalancerClientFilter grayLoadBalancerClientFilter(LoadBalancerClient loadBalancerClient,
+                                                                             LoadBalancerProperties properties) {
+                return new GrayLoadBalancerClientFilter(loadBalancerClient, properties);
+            }
+        }
+    }
+
+    /**
+     * Spring Cloud LoadBalancer 灰度负载均衡器，作为所有服务的默认负载均衡器
+     * 网关中由 ReactiveLoadBalancerClientFilter 调用，不阻塞事件循环线程；Feign 中由 BlockingLoadBalancerClient 调用
+     * PS：Ribbon 在类路径上时需要设置 spring.cloud.loadbalancer.ribbon.enabled=false 才会使用
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer")
+    @LoadBalancerClients(defaultConfiguration = GrayLoadBalancerClientConfiguration.class)
+    static class GrayLoadBalancerAutoConfiguration {
     }
 
     @Configuration(proxyBeanMethods = false)
@@ -74,4 +139,52 @@ public class GrayAutoConfiguration {
             return new GrayFeignRequestInterceptor();
         }
     }
+
+    /**
+     * 按版本的请求、负载均衡统计
+     * @return GrayVersionStats
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public GrayVersionStats grayVersionStats() {
+        return new GrayVersionStats();
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+    static class GrayMetricsAutoConfiguration {
+        /**
+         * 灰度统计指标（/actuator/metrics/gray.*）
+         * @return GrayMetricsBinder
+         */
+        @Bean
+        public GrayMetricsBinder grayMetricsBinder(GrayVersionStats grayVersionStats) {
+            return new GrayMetricsBinder(grayVersionStats);
+        }
+    }
+
+    /**
+     * 线程池任务装饰器，Spring Boot 的默认线程池（@Async）会自动使用
+     * @return GrayTaskDecorator
+     */
+    @Bean
+    @ConditionalOnMissingBean(TaskDecorator.class)
+    public GrayTaskDecorator grayTaskDecorator() {
+        return new GrayTaskDecorator();
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = {"org.springframework.messaging.support.ChannelInterceptor",
+            "org.springframework.integration.config.GlobalChannelInterceptor"})
+    static class GrayMessagingAutoConfiguration {
+        /**
+         * 消息灰度标记传递，注册到全部消息通道（Spring Cloud Stream 的输入、输出通道）
+         * @return GrayChannelInterceptor
+         */
+        @Bean
+        @GlobalChannelInterceptor(patterns = "*")
+        public GrayChannelInterceptor grayChannelInterceptor() {
+            return new GrayChannelInterceptor();
+        }
+    }
 }
@@ -0,0 +1,33 @@
+package org.jiabin.starter.module.practice.config;
+
+import org.jiabin.starter.module.practice.loadbalancer.GrayReactorLoadBalancer;
+import org.jiabin.starter.module.practice.metrics.GrayVersionStats;
+import org.jiabin.starter.module.practice.properties.GrayVersionProperties;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * 每个服务的 LoadBalancer 子容器配置（通过 @LoadBalancerClients 注册，不能被组件扫描到）
+ * 优先于默认配置加载，默认的轮询负载均衡器不再创建，服务实例列表仍使用默认配置（带缓存）
+ */
+@Configuration(proxyBeanMethods = false)
+public class GrayLoadBalancerClientConfiguration {
+
+    @Bean
+    public ReactorLoadBalancer<ServiceInstance> grayReactorLoadBalancer(Environment environment,
+                                                                        LoadBalancerClientFactory loadBalancerClientFactory,
+                                                                        GrayVersionProperties grayVersionProperties,
+                                                                        ObjectProvider<GrayVersionStats> grayVersionStats) {
+        String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        String metaVersion = environment.getProperty("spring.cloud.nacos.discovery.metadata.version");
+        return new GrayReactorLoadBalancer(
+                loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+                serviceId, grayVersionProperties, metaVersion, grayVersionStats.getIfAvailable());
+    }
+}
@@ -5,4 +5,9 @@ public interface GrayConstant {
      * 灰度统一请求头
      */
     String GRAY_HEADER="gray";
+
+    /**
+     * 网关中保存灰度标记的 exchange 属性名
+     */
+    String GRAY_TAG_ATTR = "grayStatusTag";
 }
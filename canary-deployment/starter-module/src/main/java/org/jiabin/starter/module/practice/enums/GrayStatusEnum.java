@@ -1,6 +1,9 @@
 package org.jiabin.starter.module.practice.enums;
 
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum GrayStatusEnum {
     ALL("ALL","可以调用全部版本的服务"),
     PROD("PROD","只能调用生产版本的服务"),
@@ -11,6 +14,18 @@ public enum GrayStatusEnum {
     }
     private String val;
     private String desc;
+
+    /**
+     * val 与枚举的对应关系，避免每次调用 values() 复制数组并逐个比较
+     */
+    private static final Map<String, GrayStatusEnum> VAL_MAP = new HashMap<>(8);
+
+    static {
+        for (GrayStatusEnum value : values()) {
+            VAL_MAP.put(value.val, value);
+        }
+    }
+
     public String getVal() {
         return val;
     }
@@ -18,11 +33,6 @@ public enum GrayStatusEnum {
         if(val == null){
             return null;
         }
-        for (GrayStatusEnum value : values()) {
-            if(value.val.equals(val)){
-                return value;
-            }
-        }
-        return null;
+        return VAL_MAP.get(val);
     }
 }
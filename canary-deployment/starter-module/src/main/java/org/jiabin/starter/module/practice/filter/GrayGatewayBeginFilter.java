@@ -2,125 +2,120 @@ package org.jiabin.starter.module.practice.filter;
 
 import org.jiabin.starter.module.practice.constant.GrayConstant;
 import org.jiabin.starter.module.practice.enums.GrayStatusEnum;
-import org.jiabin.starter.module.practice.holder.GrayFlagRequestHolder;
+import org.jiabin.starter.module.practice.holder.GrayFlagReactiveHolder;
+import org.jiabin.starter.module.practice.metrics.GrayCanaryAnalyzer;
+import org.jiabin.starter.module.practice.metrics.GrayVersionStats;
 import org.jiabin.starter.module.practice.properties.GrayGatewayProperties;
+import org.jiabin.starter.module.practice.rule.GrayCityResolver;
+import org.jiabin.starter.module.practice.rule.GrayRuleMatcher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.context.ApplicationListener;
 import org.springframework.core.Ordered;
-import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.server.reactive.ServerHttpRequest;
-import org.springframework.util.CollectionUtils;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
-import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 
 
-public class GrayGatewayBeginFilter implements GlobalFilter, Ordered {
+public class GrayGatewayBeginFilter implements GlobalFilter, Ordered, ApplicationListener<RefreshScopeRefreshedEvent> {
     @Autowired
     private GrayGatewayProperties grayGatewayProperties;
+
+    @Autowired(required = false)
+    private GrayCityResolver grayCityResolver;
+
+    @Autowired(required = false)
+    private GrayVersionStats grayVersionStats;
+
+    @Autowired(required = false)
+    private GrayCanaryAnalyzer grayCanaryAnalyzer;
+
+    /**
+     * 编译后的灰度规则，配置刷新时整体替换，请求线程只读取不加锁
+     */
+    private final AtomicReference<CompiledRule> compiledRule = new AtomicReference<>(new CompiledRule(0L, null));
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
         GrayStatusEnum grayStatusEnum = GrayStatusEnum.ALL;
         // 当灰度开关打开时才进行请求头判断
-        if (grayGatewayProperties.getEnabled()) {
+        if (grayCanaryAnalyzer != null && grayCanaryAnalyzer.isRolledBack()) {
+            // 灰度版本已自动回滚，全部请求路由到生产版本
+            grayStatusEnum = GrayStatusEnum.PROD;
+        } else if (grayGatewayProperties.getEnabled()) {
             grayStatusEnum = GrayStatusEnum.PROD;
             // 判断是否需要调用灰度版本
             if (checkGray(exchange.getRequest())) {
                 grayStatusEnum = GrayStatusEnum.GRAY;
             }
         }
-        GrayFlagRequestHolder.setGrayTag(grayStatusEnum);
+        // 灰度标记保存在 exchange 属性和 Reactor Context 中，不使用 ThreadLocal（请求会在多个线程之间切换）
+        GrayFlagReactiveHolder.setGrayTag(exchange, grayStatusEnum);
         ServerHttpRequest newRequest = exchange.getRequest().mutate()
                 .header(GrayConstant.GRAY_HEADER, grayStatusEnum.getVal())
                 .build();
         ServerWebExchange newExchange = exchange.mutate()
                 .request(newRequest)
                 .build();
-        return chain.filter(newExchange);
+        GrayStatusEnum grayTag = grayStatusEnum;
+        Mono<Void> result = chain.filter(newExchange);
+        if (grayVersionStats != null && grayTag != GrayStatusEnum.ALL) {
+            long start = System.nanoTime();
+            result = result.doFinally(signalType -> {
+                HttpStatus status = newExchange.getResponse().getStatusCode();
+                boolean error = signalType == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+                grayVersionStats.record(grayTag, System.nanoTime() - start, error);
+            });
+        }
+        return result.subscriberContext(context -> GrayFlagReactiveHolder.withGrayTag(context, grayTag));
     }
 
     /**
      * 校验是否使用灰度版本
      */
     private boolean checkGray(ServerHttpRequest request) {
-        if (checkGrayHeadKey(request) || checkGrayIPList(request) || checkGrayCiryList(request) || checkGrayUserNoList(request)) {
-            return true;
+        CompiledRule current = compiledRule.get();
+        GrayRuleMatcher matcher = current.matcher;
+        if (matcher == null) {
+            matcher = GrayRuleMatcher.compile(grayGatewayProperties, grayCityResolver);
+            // 编译期间发生配置刷新时代数已变化，不发布可能基于旧配置编译的规则，由后续请求重新编译
+            compiledRule.compareAndSet(current, new CompiledRule(current.generation, matcher));
         }
-        return false;
+        return matcher.match(request);
     }
 
     /**
-     * 校验自定义灰度版本请求头判断是否需要调用灰度版本
+     * 配置刷新（@RefreshScope）后重新编译灰度规则
      */
-    private boolean checkGrayHeadKey(ServerHttpRequest request) {
-        HttpHeaders headers = request.getHeaders();
-        if (headers.containsKey(grayGatewayProperties.getGrayHeadKey())) {
-            List<String> grayValues = headers.get(grayGatewayProperties.getGrayHeadKey());
-            if (!Objects.isNull(grayValues)
-                    && grayValues.size() > 0
-                    && grayGatewayProperties.getGrayHeadValue().equals(grayValues.get(0))) {
-                return true;
-            }
-        }
-        return false;
+    @Override
+    public void onApplicationEvent(RefreshScopeRefreshedEvent event) {
+        compiledRule.updateAndGet(current -> new CompiledRule(current.generation + 1, null));
     }
 
-    /**
-     * 校验自定义灰度版本IP数组判断是否需要调用灰度版本
-     */
-    private boolean checkGrayIPList(ServerHttpRequest request) {
-        List<String> grayIPList = grayGatewayProperties.getGrayIPList();
-        if (CollectionUtils.isEmpty(grayIPList)) {
-            return false;
-        }
-        String realIP = request.getHeaders().getFirst("X-Real-IP");
-        if (realIP == null || realIP.isEmpty()) {
-            realIP = request.getRemoteAddress().getAddress().getHostAddress();
-        }
-        if (realIP != null && CollectionUtils.contains(grayIPList.iterator(), realIP)) {
-            return true;
-        }
-        return false;
+    @Override
+    public int getOrder() {
+        // 设置过滤器的执行顺序，值越小越先执行
+        return Ordered.HIGHEST_PRECEDENCE;
     }
 
     /**
-     * 校验自定义灰度版本城市数组判断是否需要调用灰度版本
+     * 灰度规则及其配置代数，配置每刷新一次代数加一
      */
-    private boolean checkGrayCiryList(ServerHttpRequest request) {
-        List<String> grayCityList = grayGatewayProperties.getGrayCityList();
-        if (CollectionUtils.isEmpty(grayCityList)) {
-            return false;
-        }
-        String realIP = request.getHeaders().getFirst("X-Real-IP");
-        if (realIP == null || realIP.isEmpty()) {
-            realIP = request.getRemoteAddress().getAddress().getHostAddress();
-        }
-        // 通过IP获取当前城市名称
-        // 这里篇幅比较长不具体实现了,想要实现的可以使用ip2region.xdb,这里写死cityName = "本地"
-        String cityName = "本地";
-        if (cityName != null && CollectionUtils.contains(grayCityList.iterator(), cityName)) {
-            return true;
-        }
-        return false;
-    }
+    private static final class CompiledRule {
 
-    /**
-     * 校验自定义灰度版本用户编号数组（我们系统不会在网关获取用户编号这种方法如果需要可以自己实现一下）
-     */
-    private boolean checkGrayUserNoList(ServerHttpRequest request) {
-        List<String> grayUserNoList = grayGatewayProperties.getGrayUserNoList();
-        if (CollectionUtils.isEmpty(grayUserNoList)) {
-            return false;
-        }
-        return false;
-    }
+        private final long generation;
 
-    @Override
-    public int getOrder() {
-        // 设置过滤器的执行顺序，值越小越先执行
-        return Ordered.HIGHEST_PRECEDENCE;
+        private final GrayRuleMatcher matcher;
+
+        private CompiledRule(long generation, GrayRuleMatcher matcher) {
+            this.generation = generation;
+            this.matcher = matcher;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,28 @@
+package org.jiabin.starter.module.practice.filter;
+
+import org.jiabin.starter.module.practice.holder.GrayFlagReactiveHolder;
+import org.jiabin.starter.module.practice.holder.GrayFlagRequestHolder;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerClient;
+import org.springframework.cloud.gateway.config.LoadBalancerProperties;
+import org.springframework.cloud.gateway.filter.LoadBalancerClientFilter;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * 灰度负载均衡过滤器（Ribbon）
+ * Ribbon 的负载均衡规则通过 {@link GrayFlagRequestHolder} 读取灰度标记，
+ * 这里只在选择服务实例的同步调用期间，在当前线程上设置 exchange 中的灰度标记，选择完成后立即恢复，
+ * 标记不会残留在事件循环线程上被其他请求读取
+ */
+public class GrayLoadBalancerClientFilter extends LoadBalancerClientFilter {
+
+    public GrayLoadBalancerClientFilter(LoadBalancerClient loadBalancer, LoadBalancerProperties properties) {
+        super(loadBalancer, properties);
+    }
+
+    @Override
+    protected ServiceInstance choose(ServerWebExchange exchange) {
+        return GrayFlagRequestHolder.callWithGrayTag(GrayFlagReactiveHolder.getGrayTag(exchange),
+                () -> super.choose(exchange));
+    }
+}
@@ -1,6 +1,5 @@
 package org.jiabin.starter.module.practice.handler;
 
-import org.jiabin.starter.module.practice.holder.GrayFlagRequestHolder;
 import org.springframework.core.Ordered;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.server.reactive.ServerHttpResponse;
@@ -13,8 +12,6 @@ import reactor.core.publisher.Mono;
 public class GrayGatewayExceptionHandler implements WebExceptionHandler, Ordered {
     @Override
     public Mono<Void> handle(ServerWebExchange exchange, Throwable ex) {
-        // 请求执行完必须要remore当前线程的ThreadLocal
-        GrayFlagRequestHolder.remove();
         ServerHttpResponse response = exchange.getResponse();
         if (ex instanceof ResponseStatusException) {
             // 处理 ResponseStatusException 异常
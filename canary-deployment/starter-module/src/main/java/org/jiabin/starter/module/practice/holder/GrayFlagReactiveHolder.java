@@ -0,0 +1,51 @@
+package org.jiabin.starter.module.practice.holder;
+
+import org.jiabin.starter.module.practice.constant.GrayConstant;
+import org.jiabin.starter.module.practice.enums.GrayStatusEnum;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * 网关（WebFlux）中的灰度标记
+ * 请求可能在多个事件循环线程之间切换，灰度标记不能放在 ThreadLocal 中，
+ * 这里同时保存在 exchange 属性（供过滤器、负载均衡器读取）和 Reactor Context（供下游响应式代码读取）中
+ */
+public class GrayFlagReactiveHolder {
+
+    /**
+     * 灰度标记在 Reactor Context 中的 key（编译期常量，非 WebFlux 应用引用时不会加载本类）
+     */
+    public static final String CONTEXT_KEY = GrayConstant.GRAY_TAG_ATTR;
+
+    /**
+     * 保存灰度标记到 exchange 属性
+     */
+    public static void setGrayTag(ServerWebExchange exchange, GrayStatusEnum tag) {
+        exchange.getAttributes().put(GrayConstant.GRAY_TAG_ATTR, tag);
+    }
+
+    /**
+     * 从 exchange 属性中获取灰度标记
+     */
+    public static GrayStatusEnum getGrayTag(ServerWebExchange exchange) {
+        return exchange.getAttribute(GrayConstant.GRAY_TAG_ATTR);
+    }
+
+    /**
+     * 将灰度标记写入 Reactor Context
+     */
+    public static Context withGrayTag(Context context, GrayStatusEnum tag) {
+        return tag == null ? context : context.put(CONTEXT_KEY, tag);
+    }
+
+    /**
+     * 从 Reactor Context 中获取灰度标记，不存在时返回空
+     */
+    public static Mono<GrayStatusEnum> getGrayTag() {
+        return Mono.subscriberContext()
+                .flatMap(context -> Mono.justOrEmpty(context.getOrEmpty(CONTEXT_KEY)))
+                .cast(GrayStatusEnum.class);
+    }
+
+}
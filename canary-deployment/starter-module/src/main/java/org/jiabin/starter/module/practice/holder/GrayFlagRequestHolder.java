@@ -3,10 +3,14 @@ package org.jiabin.starter.module.practice.holder;
 
 import org.jiabin.starter.module.practice.enums.GrayStatusEnum;
 
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
 public class GrayFlagRequestHolder {
     /**
      * 标记是否使用灰度版本
      * 具体描述请查看 {@link GrayStatusEnum}
+     * PS：只用于线程模型为一个请求一个线程的场景（Spring MVC、Feign），网关中灰度标记保存在 exchange 属性和 Reactor Context 中
      */
     private static final ThreadLocal<GrayStatusEnum> grayFlag = new ThreadLocal<>();
 
@@ -22,4 +26,69 @@ public class GrayFlagRequestHolder {
         grayFlag.remove();
     }
 
-}
\ No newline at end of file
+    /**
+     * 在当前线程上以指定灰度标记执行一段同步代码，执行完成后恢复原有标记
+     * 用于网关等不能长期占用线程的场景，在调用负载均衡器等阻塞代码时临时设置灰度标记
+     */
+    public static <T> T callWithGrayTag(final GrayStatusEnum tag, Supplier<T> supplier) {
+        GrayStatusEnum previous = replace(tag);
+        try {
+            return supplier.get();
+        } finally {
+            replace(previous);
+        }
+    }
+
+    /**
+     * 包装任务，在执行任务的线程上使用提交任务时的灰度标记，执行完成后恢复
+     * 提交时没有灰度标记则直接返回原任务
+     */
+    public static Runnable wrap(final Runnable task) {
+        final GrayStatusEnum tag = grayFlag.get();
+        if (tag == null) {
+            return task;
+        }
+        return () -> {
+            GrayStatusEnum previous = replace(tag);
+            try {
+                task.run();
+            } finally {
+                replace(previous);
+            }
+        };
+    }
+
+    /**
+     * 包装任务，在执行任务的线程上使用提交任务时的灰度标记，执行完成后恢复
+     * 提交时没有灰度标记则直接返回原任务
+     */
+    public static <T> Callable<T> wrap(final Callable<T> task) {
+        final GrayStatusEnum tag = grayFlag.get();
+        if (tag == null) {
+            return task;
+        }
+        return () -> {
+            GrayStatusEnum previous = replace(tag);
+            try {
+                return task.call();
+            } finally {
+                replace(previous);
+            }
+        };
+    }
+
+    /**
+     * 设置灰度标记
+     * @return 原有灰度标记
+     */
+    public static GrayStatusEnum replace(final GrayStatusEnum tag) {
+        GrayStatusEnum previous = grayFlag.get();
+        if (tag == null) {
+            grayFlag.remove();
+        } else {
+            grayFlag.set(tag);
+        }
+        return previous;
+    }
+
+}
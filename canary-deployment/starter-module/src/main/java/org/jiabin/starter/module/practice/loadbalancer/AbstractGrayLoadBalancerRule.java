@@ -3,48 +3,108 @@ package org.jiabin.starter.module.practice.loadbalancer;
 import com.alibaba.cloud.nacos.ribbon.NacosServer;
 import org.jiabin.starter.module.practice.enums.GrayStatusEnum;
 import org.jiabin.starter.module.practice.holder.GrayFlagRequestHolder;
+import org.jiabin.starter.module.practice.metrics.GrayVersionStats;
 import org.jiabin.starter.module.practice.properties.GrayVersionProperties;
 import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.BaseLoadBalancer;
 import com.netflix.loadbalancer.ILoadBalancer;
 import com.netflix.loadbalancer.Server;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public abstract class AbstractGrayLoadBalancerRule extends AbstractLoadBalancerRule {
+    protected static final Server[] EMPTY_SERVERS = new Server[0];
+
+    private static final String METADATA_VERSION = "version";
+
     @Autowired
     private GrayVersionProperties grayVersionProperties;
 
+    @Autowired(required = false)
+    private GrayVersionStats grayVersionStats;
+
     @Value("${spring.cloud.nacos.discovery.metadata.version}")
     private String metaVersion;
 
     /**
-     * 只有已启动且可访问的服务器，并对灰度标识进行判断
+     * 按版本分组的服务列表（不可变），服务列表或服务状态变化时置空，下次选择服务时重新构建
      */
-    public List<Server> getReachableServers() {
-        ILoadBalancer lb = getLoadBalancer();
-        if (lb == null) {
-            return new ArrayList<>();
+    private volatile ServerPartition partition;
+
+    /**
+     * 服务列表变化次数，用于丢弃变化前开始构建的分组
+     */
+    private final AtomicInteger serverListVersion = new AtomicInteger();
+
+    /**
+     * 负载均衡器是否会通知服务列表变化，不会通知时每次都重新分组
+     */
+    private volatile boolean listening;
+
+    @Override
+    public void setLoadBalancer(ILoadBalancer lb) {
+        super.setLoadBalancer(lb);
+        invalidate();
+        listening = false;
+        if (lb instanceof BaseLoadBalancer) {
+            BaseLoadBalancer baseLoadBalancer = (BaseLoadBalancer) lb;
+            baseLoadBalancer.addServerListChangeListener((oldList, newList) -> invalidate());
+            baseLoadBalancer.addServerStatusChangeListener(servers -> invalidate());
+            listening = true;
         }
-        List<Server> reachableServers = lb.getReachableServers();
+    }
 
-        return getGrayServers(reachableServers);
+    /**
+     * 只有已启动且可访问的服务器，并对灰度标识进行判断
+     */
+    public List<Server> getReachableServers() {
+        return Collections.unmodifiableList(Arrays.asList(getGrayServerArray(true)));
     }
 
     /**
      * 所有已知的服务器，可访问和不可访问，并对灰度标识进行判断
      */
     public List<Server> getAllServers() {
-        ILoadBalancer lb = getLoadBalancer();
-        if (lb == null) {
-            return new ArrayList<>();
+        return Collections.unmodifiableList(Arrays.asList(getGrayServerArray(false)));
+    }
+
+    /**
+     * 获取当前灰度标记对应版本的服务数组，数组不可修改
+     * @param reachableOnly true: 只返回已启动且可访问的服务器
+     */
+    protected Server[] getGrayServerArray(boolean reachableOnly) {
+        ServerPartition current = getPartition();
+        if (current == null) {
+            return EMPTY_SERVERS;
+        }
+        GrayStatusEnum grayStatusEnum = GrayFlagRequestHolder.getGrayTag();
+        if (grayStatusEnum == GrayStatusEnum.ALL) {
+            return reachableOnly ? current.reachableServers : current.allServers;
+        }
+        Server[] servers = (reachableOnly ? current.reachableByVersion : current.allByVersion)
+                .get(getCurrentVersion(grayStatusEnum));
+        return servers == null ? EMPTY_SERVERS : servers;
+    }
+
+    /**
+     * 记录当前灰度标记的负载均衡选择结果
+     * @return 选择的服务
+     */
+    protected Server recordSelection(Server server) {
+        if (grayVersionStats != null) {
+            grayVersionStats.recordSelection(GrayFlagRequestHolder.getGrayTag(), server != null);
         }
-        List<Server> allServers = lb.getAllServers();
-        return getGrayServers(allServers);
+        return server;
     }
 
     /**
@@ -55,25 +115,14 @@ public abstract class AbstractGrayLoadBalancerRule extends AbstractLoadBalancerR
         if (servers == null) {
             return result;
         }
-        String currentVersion = metaVersion;
         GrayStatusEnum grayStatusEnum = GrayFlagRequestHolder.getGrayTag();
-        if (grayStatusEnum != null) {
-            switch (grayStatusEnum) {
-                case ALL:
-                    return servers;
-                case PROD:
-                    currentVersion = grayVersionProperties.getProdVersion();
-                    break;
-                case GRAY:
-                    currentVersion = grayVersionProperties.getGrayVersion();
-                    break;
-            }
+        if (grayStatusEnum == GrayStatusEnum.ALL) {
+            return servers;
         }
-
+        String currentVersion = getCurrentVersion(grayStatusEnum);
+        ServerPartition current = partition;
         for (Server server : servers) {
-            NacosServer nacosServer = (NacosServer) server;
-            Map<String, String> metadata = nacosServer.getMetadata();
-            String version = metadata.get("version");
+            String version = current == null ? getVersion(server) : current.getVersion(server);
             // 判断服务metadata下的version是否于设置的请求版本一致
             if (version != null && version.equals(currentVersion)) {
                 result.add(server);
@@ -81,4 +130,105 @@ public abstract class AbstractGrayLoadBalancerRule extends AbstractLoadBalancerR
         }
         return result;
     }
+
+    /**
+     * 灰度标记对应的服务版本号，没有灰度标记时使用当前服务的版本号
+     */
+    private String getCurrentVersion(GrayStatusEnum grayStatusEnum) {
+        if (grayStatusEnum == GrayStatusEnum.PROD) {
+            return grayVersionProperties.getProdVersion();
+        }
+        if (grayStatusEnum == GrayStatusEnum.GRAY) {
+            return grayVersionProperties.getGrayVersion();
+        }
+        return metaVersion;
+    }
+
+    private String getVersion(Server server) {
+        if (!(server instanceof NacosServer)) {
+            return null;
+        }
+        Map<String, String> metadata = ((NacosServer) server).getMetadata();
+        return metadata == null ? null : metadata.get(METADATA_VERSION);
+    }
+
+    private void invalidate() {
+        serverListVersion.incrementAndGet();
+        partition = null;
+    }
+
+    private ServerPartition getPartition() {
+        ServerPartition current = partition;
+        if (current != null) {
+            return current;
+        }
+        ILoadBalancer lb = getLoadBalancer();
+        if (lb == null) {
+            return null;
+        }
+        int version = serverListVersion.get();
+        current = new ServerPartition(lb.getAllServers(), lb.getReachableServers());
+        if (listening && serverListVersion.get() == version) {
+            partition = current;
+        }
+        return current;
+    }
+
+    /**
+     * 按 metadata 中的 version 分组的服务数组
+     */
+    private final class ServerPartition {
+
+        private final Server[] allServers;
+
+        private final Server[] reachableServers;
+
+        private final Map<String, Server[]> allByVersion;
+
+        private final Map<String, Server[]> reachableByVersion;
+
+        /**
+         * 服务的版本号（按对象引用），每个服务的 metadata 只读取一次
+         */
+        private final Map<Server, String> versionMap;
+
+        private ServerPartition(List<Server> allServerList, List<Server> reachableServerList) {
+            this.allServers = toArray(allServerList);
+            this.reachableServers = toArray(reachableServerList);
+            this.versionMap = new IdentityHashMap<>(allServers.length * 2);
+            for (Server server : allServers) {
+                versionMap.put(server, AbstractGrayLoadBalancerRule.this.getVersion(server));
+            }
+            this.allByVersion = groupByVersion(allServers);
+            this.reachableByVersion = groupByVersion(reachableServers);
+        }
+
+        /**
+         * 获取服务的版本号，不在本次分组中的服务读取 metadata
+         */
+        private String getVersion(Server server) {
+            String version = versionMap.get(server);
+            if (version == null && !versionMap.containsKey(server)) {
+                version = AbstractGrayLoadBalancerRule.this.getVersion(server);
+            }
+            return version;
+        }
+
+        private Server[] toArray(List<Server> serverList) {
+            return serverList == null || serverList.isEmpty() ? EMPTY_SERVERS : serverList.toArray(EMPTY_SERVERS);
+        }
+
+        private Map<String, Server[]> groupByVersion(Server[] servers) {
+            Map<String, List<Server>> groupMap = new HashMap<>(4);
+            for (Server server : servers) {
+                String version = getVersion(server);
+                if (version != null) {
+                    groupMap.computeIfAbsent(version, k -> new ArrayList<>()).add(server);
+                }
+            }
+            Map<String, Server[]> result = new HashMap<>(groupMap.size() * 2);
+            groupMap.forEach((version, serverList) -> result.put(version, serverList.toArray(EMPTY_SERVERS)));
+            return result;
+        }
+    }
 }
@@ -0,0 +1,237 @@
+package org.jiabin.starter.module.practice.loadbalancer;
+
+import com.netflix.client.config.CommonClientConfigKey;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.AbstractLoadBalancer;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.LoadBalancerStats;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 灰度最小延迟规则（二选一 + 异常实例摘除）
+ * 在当前灰度标记对应版本的可用实例中随机取两个，选择 EWMA 延迟 x (处理中请求数 + 1) 较小的一个；
+ * 连续失败次数达到阈值、熔断或延迟远高于同组实例的实例会被摘除一段时间，全部被摘除时忽略摘除状态。
+ * 延迟与处理中请求数来自 Ribbon 的 {@link LoadBalancerStats}（Feign、RestTemplate 通过 Ribbon 调用时自动记录）
+ * 配置（<服务名>.ribbon.xxx）：
+ * GrayOutlierConsecutiveFailures 连续失败摘除阈值，默认 5
+ * GrayOutlierLatencyMultiple 延迟摘除倍数（相对另一个候选实例），默认 5，0 表示不按延迟摘除
+ * GrayOutlierCooldownMillis 摘除时间（毫秒），默认 30000
+ * GrayLatencyDecayMillis EWMA 衰减时间（毫秒），默认 10000
+ */
+public class GrayLeastLatencyRule extends AbstractGrayLoadBalancerRule {
+
+    private static final Logger log = LoggerFactory.getLogger(GrayLeastLatencyRule.class);
+
+    /**
+     * 按延迟摘除时要求的最小延迟（毫秒），避免延迟都很低时误摘除
+     */
+    private static final double MIN_OUTLIER_LATENCY_MILLIS = 50D;
+
+    private int consecutiveFailures = 5;
+
+    private int latencyMultiple = 5;
+
+    private long cooldownMillis = 30000L;
+
+    private double decayMillis = 10000D;
+
+    /**
+     * 实例状态，key: 实例
+     */
+    private final Map<Server, ServerState> stateMap = new ConcurrentHashMap<>(16);
+
+    public GrayLeastLatencyRule() {
+    }
+
+    public GrayLeastLatencyRule(ILoadBalancer lb) {
+        this();
+        setLoadBalancer(lb);
+    }
+
+    @Override
+    public Server choose(Object key) {
+        return recordSelection(chooseServer());
+    }
+
+    private Server chooseServer() {
+        ILoadBalancer lb = getLoadBalancer();
+        if (lb == null) {
+            log.warn("no load balancer");
+            return null;
+        }
+        Server[] servers = getGrayServerArray(true);
+        if (servers.length == 0) {
+            log.warn("No up servers available from load balancer: " + lb);
+            return null;
+        }
+        if (servers.length == 1) {
+            return servers[0];
+        }
+        LoadBalancerStats stats = lb instanceof AbstractLoadBalancer
+                ? ((AbstractLoadBalancer) lb).getLoadBalancerStats() : null;
+        long now = System.currentTimeMillis();
+        pruneStates(servers.length);
+
+        Server first = pick(servers, stats, now, null);
+        Server second = pick(servers, stats, now, first);
+        if (first != null && second == null) {
+            // 只剩一个未被摘除的实例
+            return first;
+        }
+        if (first == null) {
+            // 全部实例都被摘除时忽略摘除状态，避免没有实例可用
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int i = random.nextInt(servers.length);
+            int j = random.nextInt(servers.length - 1);
+            first = servers[i];
+            second = servers[j >= i ? j + 1 : j];
+        }
+        ServerState firstState = getState(first);
+        ServerState secondState = getState(second);
+        double firstLatency = firstState.latency(stats == null ? null : stats.getSingleServerStat(first), now, decayMillis);
+        double secondLatency = secondState.latency(stats == null ? null : stats.getSingleServerStat(second), now, decayMillis);
+        checkLatencyOutlier(first, firstState, firstLatency, secondLatency, now);
+        checkLatencyOutlier(second, secondState, secondLatency, firstLatency, now);
+        double firstScore = score(stats, first, firstLatency, now);
+        double secondScore = score(stats, second, secondLatency, now);
+        return firstScore <= secondScore ? first : second;
+    }
+
+    /**
+     * 随机选择一个未被摘除的实例，最多尝试实例数次
+     */
+    private Server pick(Server[] servers, LoadBalancerStats stats, long now, Server exclude) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < servers.length; i++) {
+            Server server = servers[random.nextInt(servers.length)];
+            if (server == exclude || !server.isAlive()) {
+                continue;
+            }
+            if (!isEjected(server, stats, now)) {
+                return server;
+            }
+        }
+        return null;
+    }
+
+    private boolean isEjected(Server server, LoadBalancerStats stats, long now) {
+        ServerState state = getState(server);
+        if (now < state.ejectedUntil) {
+            return true;
+        }
+        if (stats == null) {
+            return false;
+        }
+        ServerStats serverStats = stats.getSingleServerStat(server);
+        if (serverStats.isCircuitBreakerTripped(now)
+                || serverStats.getSuccessiveConnectionFailureCount() >= consecutiveFailures) {
+            eject(server, state, now, "consecutive failures");
+            return true;
+        }
+        return false;
+    }
+
+    private void checkLatencyOutlier(Server server, ServerState state, double latency, double otherLatency, long now) {
+        if (latencyMultiple > 0 && latency >= MIN_OUTLIER_LATENCY_MILLIS && otherLatency > 0
+                && latency > otherLatency * latencyMultiple) {
+            eject(server, state, now, "latency " + (long) latency + "ms");
+        }
+    }
+
+    private void eject(Server server, ServerState state, long now, String reason) {
+        if (now >= state.ejectedUntil) {
+            log.warn("Eject server {} for {}ms: {}", server.getHostPort(), cooldownMillis, reason);
+        }
+        state.ejectedUntil = now + cooldownMillis;
+    }
+
+    private double score(LoadBalancerStats stats, Server server, double latency, long now) {
+        int active = stats == null ? 0 : stats.getSingleServerStat(server).getActiveRequestsCount(now);
+        // 新实例还没有延迟数据时按 1ms 计算，由处理中请求数区分
+        return Math.max(latency, 1D) * (active + 1);
+    }
+
+    private ServerState getState(Server server) {
+        ServerState state = stateMap.get(server);
+        if (state == null) {
+            state = stateMap.computeIfAbsent(server, k -> new ServerState());
+        }
+        return state;
+    }
+
+    /**
+     * 实例下线后清理状态
+     */
+    private void pruneStates(int serverCount) {
+        if (stateMap.size() <= serverCount * 2 + 16) {
+            return;
+        }
+        ILoadBalancer lb = getLoadBalancer();
+        if (lb != null) {
+            stateMap.keySet().retainAll(lb.getAllServers());
+        }
+    }
+
+    @Override
+    public void initWithNiwsConfig(IClientConfig clientConfig) {
+        consecutiveFailures = getInt(clientConfig, "GrayOutlierConsecutiveFailures", consecutiveFailures);
+        latencyMultiple = getInt(clientConfig, "GrayOutlierLatencyMultiple", latencyMultiple);
+        cooldownMillis = getInt(clientConfig, "GrayOutlierCooldownMillis", (int) cooldownMillis);
+        decayMillis = getInt(clientConfig, "GrayLatencyDecayMillis", (int) decayMillis);
+    }
+
+    private int getInt(IClientConfig clientConfig, String key, int defaultValue) {
+        return clientConfig == null ? defaultValue
+                : clientConfig.getPropertyAsInteger(CommonClientConfigKey.valueOf(key), defaultValue);
+    }
+
+    /**
+     * 实例延迟状态
+     * Ribbon 只记录累计平均延迟，这里根据两次读取之间新增的请求数和总耗时计算新请求的平均延迟，再按时间衰减计算 EWMA
+     */
+    private static final class ServerState {
+
+        private long measuredCount;
+
+        private double totalLatency;
+
+        private double ewma;
+
+        private long lastUpdate;
+
+        private volatile long ejectedUntil;
+
+        private synchronized double latency(ServerStats serverStats, long now, double decayMillis) {
+            if (serverStats == null) {
+                return ewma;
+            }
+            long count = serverStats.getMeasuredRequestsCount();
+            if (count < measuredCount) {
+                // 统计被重置
+                measuredCount = 0;
+                totalLatency = 0;
+            }
+            if (count > measuredCount) {
+                double total = serverStats.getResponseTimeAvg() * count;
+                double sample = (total - totalLatency) / (count - measuredCount);
+                if (lastUpdate == 0) {
+                    ewma = sample;
+                } else {
+                    double weight = 1 - Math.exp(-(now - lastUpdate) / decayMillis);
+                    ewma += weight * (sample - ewma);
+                }
+                measuredCount = count;
+                totalLatency = total;
+                lastUpdate = now;
+            }
+            return ewma;
+        }
+    }
+}
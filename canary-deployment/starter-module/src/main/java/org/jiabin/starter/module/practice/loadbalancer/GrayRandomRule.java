@@ -4,7 +4,6 @@ import com.netflix.client.config.IClientConfig;
 import com.netflix.loadbalancer.ILoadBalancer;
 import com.netflix.loadbalancer.Server;
 
-import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
 
@@ -22,10 +21,9 @@ public class GrayRandomRule extends AbstractGrayLoadBalancerRule {
             if (Thread.interrupted()) {
                 return null;
             }
-            List<Server> upList = getReachableServers();
-            List<Server> allList = getAllServers();
+            Server[] upServers = getGrayServerArray(true);
 
-            int serverCount = allList.size();
+            int serverCount = upServers.length;
             if (serverCount == 0) {
                 /*
                  * No servers. End regardless of pass, because subsequent passes
@@ -35,7 +33,7 @@ public class GrayRandomRule extends AbstractGrayLoadBalancerRule {
             }
 
             int index = chooseRandomInt(serverCount);
-            server = upList.get(index);
+            server = upServers[index];
 
             if (server == null) {
                 /*
@@ -66,7 +64,7 @@ public class GrayRandomRule extends AbstractGrayLoadBalancerRule {
 
 	@Override
 	public Server choose(Object key) {
-		return choose(getLoadBalancer(), key);
+		return recordSelection(choose(getLoadBalancer(), key));
 	}
 
 	@Override
@@ -0,0 +1,120 @@
+package org.jiabin.starter.module.practice.loadbalancer;
+
+import org.jiabin.starter.module.practice.enums.GrayStatusEnum;
+import org.jiabin.starter.module.practice.holder.GrayFlagReactiveHolder;
+import org.jiabin.starter.module.practice.holder.GrayFlagRequestHolder;
+import org.jiabin.starter.module.practice.metrics.GrayVersionStats;
+import org.jiabin.starter.module.practice.properties.GrayVersionProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.reactive.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.reactive.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.reactive.Request;
+import org.springframework.cloud.client.loadbalancer.reactive.Response;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 灰度负载均衡器（Spring Cloud LoadBalancer，响应式）
+ * 灰度标记优先从 Reactor Context 中读取（网关），不存在时读取调用线程上的 {@link GrayFlagRequestHolder}（Feign 同步调用），
+ * 在对应版本的服务实例中轮询选择
+ */
+public class GrayReactorLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(GrayReactorLoadBalancer.class);
+
+    private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+
+    private final String serviceId;
+
+    private final GrayVersionProperties grayVersionProperties;
+
+    /**
+     * 当前服务的版本号，没有灰度标记时使用
+     */
+    private final String metaVersion;
+
+    /**
+     * 按版本统计，可以为 null
+     */
+    private final GrayVersionStats grayVersionStats;
+
+    private final AtomicInteger position = new AtomicInteger();
+
+    private volatile GrayServiceInstanceListSupplier grayServiceInstanceListSupplier;
+
+    public GrayReactorLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+                                   String serviceId, GrayVersionProperties grayVersionProperties, String metaVersion,
+                                   GrayVersionStats grayVersionStats) {
+        this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+        this.serviceId = serviceId;
+        this.grayVersionProperties = grayVersionProperties;
+        this.metaVersion = metaVersion;
+        this.grayVersionStats = grayVersionStats;
+    }
+
+    @Override
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        GrayServiceInstanceListSupplier supplier = getSupplier();
+        if (supplier == null) {
+            log.warn("No servers available for service: " + serviceId);
+            return Mono.just(new EmptyResponse());
+        }
+        // 同步调用时灰度标记在调用线程上，必须在这里读取
+        GrayStatusEnum threadTag = GrayFlagRequestHolder.getGrayTag();
+        return Mono.subscriberContext()
+                .map(context -> Optional.ofNullable(
+                        context.<GrayStatusEnum>getOrDefault(GrayFlagReactiveHolder.CONTEXT_KEY, threadTag)))
+                .flatMap(grayTag -> supplier.get(getVersion(grayTag.orElse(null))).next()
+                        .map(instances -> getInstanceResponse(instances, grayTag.orElse(null))));
+    }
+
+    /**
+     * 灰度标记对应的服务版本号，null 表示全部版本
+     */
+    private String getVersion(GrayStatusEnum grayStatusEnum) {
+        if (grayStatusEnum == GrayStatusEnum.ALL) {
+            return null;
+        }
+        if (grayStatusEnum == GrayStatusEnum.PROD) {
+            return grayVersionProperties.getProdVersion();
+        }
+        if (grayStatusEnum == GrayStatusEnum.GRAY) {
+            return grayVersionProperties.getGrayVersion();
+        }
+        return metaVersion;
+    }
+
+    private Response<ServiceInstance> getInstanceResponse(List<ServiceInstance> instances, GrayStatusEnum grayTag) {
+        if (grayVersionStats != null) {
+            grayVersionStats.recordSelection(grayTag, !instances.isEmpty());
+        }
+        if (instances.isEmpty()) {
+            log.warn("No servers available for service: " + serviceId);
+            return new EmptyResponse();
+        }
+        int pos = position.incrementAndGet() & Integer.MAX_VALUE;
+        return new DefaultResponse(instances.get(pos % instances.size()));
+    }
+
+    private GrayServiceInstanceListSupplier getSupplier() {
+        GrayServiceInstanceListSupplier supplier = grayServiceInstanceListSupplier;
+        if (supplier == null) {
+            ServiceInstanceListSupplier delegate = serviceInstanceListSupplierProvider.getIfAvailable();
+            if (delegate == null) {
+                return null;
+            }
+            supplier = delegate instanceof GrayServiceInstanceListSupplier
+                    ? (GrayServiceInstanceListSupplier) delegate : new GrayServiceInstanceListSupplier(delegate);
+            grayServiceInstanceListSupplier = supplier;
+        }
+        return supplier;
+    }
+}
@@ -7,7 +7,6 @@ import com.netflix.loadbalancer.Server;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class GrayRoundRobinRule extends AbstractGrayLoadBalancerRule {
@@ -33,17 +32,17 @@ public class GrayRoundRobinRule extends AbstractGrayLoadBalancerRule {
         Server server = null;
         int count = 0;
         while (server == null && count++ < 10) {
-            List<Server> reachableServers = getReachableServers();
-            List<Server> allServers = getAllServers();
-            int upCount = reachableServers.size();
-            int serverCount = allServers.size();
+            Server[] reachableServers = getGrayServerArray(AVAILABLE_ONLY_SERVERS);
+            Server[] allServers = getGrayServerArray(ALL_SERVERS);
+            int upCount = reachableServers.length;
+            int serverCount = allServers.length;
 
             if ((upCount == 0) || (serverCount == 0)) {
                 log.warn("No up servers available from load balancer: " + lb);
                 return null;
             }
             int nextServerIndex = incrementAndGetModulo(serverCount);
-            server = allServers.get(nextServerIndex);
+            server = allServers[nextServerIndex];
             if (server == null) {
                 /* Transient. */
                 Thread.yield();
@@ -72,7 +71,7 @@ public class GrayRoundRobinRule extends AbstractGrayLoadBalancerRule {
     }
     @Override
     public Server choose(Object key) {
-        return choose(getLoadBalancer(), key);
+        return recordSelection(choose(getLoadBalancer(), key));
     }
 
     @Override
@@ -0,0 +1,97 @@
+package org.jiabin.starter.module.practice.loadbalancer;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 灰度服务实例列表（Spring Cloud LoadBalancer）
+ * 包装默认的服务实例列表，按 metadata 中的 version 分组，服务实例列表不变时复用上一次的分组结果
+ */
+public class GrayServiceInstanceListSupplier implements ServiceInstanceListSupplier {
+
+    private static final String METADATA_VERSION = "version";
+
+    private final ServiceInstanceListSupplier delegate;
+
+    /**
+     * 上一次的分组结果
+     */
+    private volatile InstancePartition partition = new InstancePartition(Collections.emptyList());
+
+    public GrayServiceInstanceListSupplier(ServiceInstanceListSupplier delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String getServiceId() {
+        return delegate.getServiceId();
+    }
+
+    @Override
+    public Flux<List<ServiceInstance>> get() {
+        return delegate.get();
+    }
+
+    /**
+     * 获取指定版本的服务实例列表，列表不可修改
+     * @param version 服务版本号，为 null 时返回全部服务实例
+     */
+    public Flux<List<ServiceInstance>> get(String version) {
+        return delegate.get().map(instances -> getPartition(instances).get(version));
+    }
+
+    private InstancePartition getPartition(List<ServiceInstance> instances) {
+        InstancePartition current = partition;
+        if (current.source == instances) {
+            return current;
+        }
+        current = new InstancePartition(instances);
+        partition = current;
+        return current;
+    }
+
+    /**
+     * 按版本分组的服务实例
+     */
+    private static final class InstancePartition {
+
+        /**
+         * 分组来源，用于判断服务实例列表是否变化
+         */
+        private final List<ServiceInstance> source;
+
+        private final List<ServiceInstance> allInstances;
+
+        private final Map<String, List<ServiceInstance>> versionMap;
+
+        private InstancePartition(List<ServiceInstance> instances) {
+            this.source = instances;
+            this.allInstances = Collections.unmodifiableList(new ArrayList<>(instances));
+            Map<String, List<ServiceInstance>> groupMap = new HashMap<>(4);
+            for (ServiceInstance instance : instances) {
+                Map<String, String> metadata = instance.getMetadata();
+                String version = metadata == null ? null : metadata.get(METADATA_VERSION);
+                if (version != null) {
+                    groupMap.computeIfAbsent(version, k -> new ArrayList<>()).add(instance);
+                }
+            }
+            Map<String, List<ServiceInstance>> result = new HashMap<>(groupMap.size() * 2);
+            groupMap.forEach((version, list) -> result.put(version, Collections.unmodifiableList(list)));
+            this.versionMap = result;
+        }
+
+        private List<ServiceInstance> get(String version) {
+            if (version == null) {
+                return allInstances;
+            }
+            return versionMap.getOrDefault(version, Collections.emptyList());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.jiabin.starter.module.practice.metrics;
+
+import org.jiabin.starter.module.practice.enums.GrayStatusEnum;
+import org.jiabin.starter.module.practice.properties.GrayGatewayProperties;
+import org.jiabin.starter.module.practice.properties.GrayVersionProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 灰度版本自动回滚分析
+ * 定时比较时间窗口内灰度版本与生产版本的错误率（双比例 z 检验）和 P95 延迟，灰度版本明显变差时关闭灰度开关，
+ * 并将全部请求路由到生产版本，直到灰度配置发生变化（@RefreshScope 刷新后与回滚时的配置不同）或调用 reset 后重新开始灰度
+ */
+public class GrayCanaryAnalyzer implements SmartInitializingSingleton, DisposableBean,
+        ApplicationListener<RefreshScopeRefreshedEvent> {
+
+    private static final Logger log = LoggerFactory.getLogger(GrayCanaryAnalyzer.class);
+
+    /**
+     * 单侧 99% 置信度的 z 值
+     */
+    private static final double Z_THRESHOLD = 2.33D;
+
+    private static final double LATENCY_QUANTILE = 0.95D;
+
+    @Autowired
+    private GrayGatewayProperties grayGatewayProperties;
+
+    @Autowired
+    private GrayVersionProperties grayVersionProperties;
+
+    @Autowired
+    private GrayVersionStats grayVersionStats;
+
+    /**
+     * 是否已自动回滚
+     */
+    private volatile boolean rolledBack;
+
+    /**
+     * 回滚时的灰度配置，配置刷新后与其不同才重新开始灰度
+     */
+    private volatile List<Object> rollbackConfig;
+
+    private GrayVersionStats.Snapshot lastProdSnapshot;
+
+    private GrayVersionStats.Snapshot lastGraySnapshot;
+
+    private ScheduledExecutorService scheduler;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        long interval = Math.max(1, grayGatewayProperties.getAnalysisIntervalSeconds());
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gray-canary-analyzer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::analyze, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 配置刷新后灰度配置发生变化时清除回滚状态，重新开始灰度；与灰度无关的配置刷新不影响回滚状态
+     */
+    @Override
+    public void onApplicationEvent(RefreshScopeRefreshedEvent event) {
+        if (!rolledBack) {
+            return;
+        }
+        if (Objects.equals(rollbackConfig, configSnapshot())) {
+            log.info("Gray configuration unchanged, still rolled back to prod version");
+            return;
+        }
+        log.info("Gray configuration changed, canary analysis restarted");
+        reset();
+    }
+
+    /**
+     * 清除回滚状态，重新开始灰度
+     */
+    public void reset() {
+        rolledBack = false;
+        rollbackConfig = null;
+    }
+
+    /**
+     * 是否已自动回滚，回滚后全部请求路由到生产版本
+     */
+    public boolean isRolledBack() {
+        return rolledBack;
+    }
+
+    void analyze() {
+        try {
+            GrayVersionStats.Snapshot prodSnapshot = grayVersionStats.snapshot(GrayStatusEnum.PROD);
+            GrayVersionStats.Snapshot graySnapshot = grayVersionStats.snapshot(GrayStatusEnum.GRAY);
+            GrayVersionStats.Snapshot prod = prodSnapshot.minus(lastProdSnapshot);
+            GrayVersionStats.Snapshot gray = graySnapshot.minus(lastGraySnapshot);
+            lastProdSnapshot = prodSnapshot;
+            lastGraySnapshot = graySnapshot;
+            if (rolledBack || !Boolean.TRUE.equals(grayGatewayProperties.getAutoRollback())
+                    || !Boolean.TRUE.equals(grayGatewayProperties.getEnabled())) {
+                return;
+            }
+            String reason = compare(prod, gray);
+            if (reason != null) {
+                rollback(reason);
+            }
+        } catch (Exception e) {
+            log.warn("Gray canary analysis failed", e);
+        }
+    }
+
+    /**
+     * 比较灰度版本与生产版本
+     * @return 灰度版本变差的原因，没有变差时返回 null
+     */
+    private String compare(GrayVersionStats.Snapshot prod, GrayVersionStats.Snapshot gray) {
+        long minRequests = grayGatewayProperties.getAnalysisMinRequests();
+        if (gray.getRequests() < minRequests) {
+            return null;
+        }
+        double grayErrorRate = gray.getErrorRate();
+        double prodErrorRate = prod.getErrorRate();
+        // 生产版本没有请求时没有比较基准，不做错误率判断
+        if (prod.getRequests() > 0
+                && grayErrorRate - prodErrorRate > grayGatewayProperties.getMaxErrorRateIncrease()) {
+            long total = prod.getRequests() + gray.getRequests();
+            double pooled = (double) (prod.getErrors() + gray.getErrors()) / total;
+            double se = Math.sqrt(pooled * (1 - pooled) * (1D / gray.getRequests() + 1D / prod.getRequests()));
+            if (se == 0 || (grayErrorRate - prodErrorRate) / se > Z_THRESHOLD) {
+                return String.format("error rate gray=%.4f prod=%.4f", grayErrorRate, prodErrorRate);
+            }
+        }
+        if (prod.getRequests() >= minRequests) {
+            long grayLatency = gray.getLatencyQuantile(LATENCY_QUANTILE);
+            long prodLatency = prod.getLatencyQuantile(LATENCY_QUANTILE);
+            if (prodLatency > 0 && grayLatency > prodLatency * grayGatewayProperties.getMaxLatencyRatio()) {
+                return "p95 latency gray=" + grayLatency + "ms prod=" + prodLatency + "ms";
+            }
+        }
+        return null;
+    }
+
+    private void rollback(String reason) {
+        // 在关闭灰度开关之前记录配置，刷新后重新绑定的配置与之比较
+        rollbackConfig = configSnapshot();
+        rolledBack = true;
+        grayGatewayProperties.setEnabled(false);
+        log.warn("Gray version regressed ({}), gray disabled and all traffic routed to prod version", reason);
+    }
+
+    /**
+     * 影响灰度路由与回滚判断的配置
+     */
+    private List<Object> configSnapshot() {
+        return Arrays.asList(grayGatewayProperties.getEnabled(), grayGatewayProperties.getGrayHeadKey(),
+                grayGatewayProperties.getGrayHeadValue(), copyOf(grayGatewayProperties.getGrayIPList()),
+                copyOf(grayGatewayProperties.getGrayCityList()), copyOf(grayGatewayProperties.getGrayUserNoList()),
+                grayGatewayProperties.getGrayUserNoHeader(), grayGatewayProperties.getGrayWeight(),
+                copyOf(grayGatewayProperties.getGrayWeightKeyHeaders()), grayGatewayProperties.getAutoRollback(),
+                grayGatewayProperties.getAnalysisMinRequests(), grayGatewayProperties.getMaxErrorRateIncrease(),
+                grayGatewayProperties.getMaxLatencyRatio(), grayVersionProperties.getProdVersion(),
+                grayVersionProperties.getGrayVersion());
+    }
+
+    private static List<String> copyOf(List<String> list) {
+        return list == null ? null : new ArrayList<>(list);
+    }
+}
@@ -0,0 +1,44 @@
+package org.jiabin.starter.module.practice.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.jiabin.starter.module.practice.enums.GrayStatusEnum;
+
+/**
+ * 将 {@link GrayVersionStats} 注册到 Micrometer，指标在采集时读取，不影响请求线程
+ * gray.requests / gray.errors / gray.selections / gray.no-instance：按版本的请求数、错误数、负载均衡选择次数
+ * gray.latency：按版本的延迟分布（le 为桶上限，毫秒，累计计数）
+ */
+public class GrayMetricsBinder implements MeterBinder {
+
+    private final GrayVersionStats grayVersionStats;
+
+    public GrayMetricsBinder(GrayVersionStats grayVersionStats) {
+        this.grayVersionStats = grayVersionStats;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (GrayStatusEnum version : new GrayStatusEnum[]{GrayStatusEnum.PROD, GrayStatusEnum.GRAY}) {
+            String tag = version.getVal();
+            FunctionCounter.builder("gray.requests", grayVersionStats, stats -> stats.requests(version))
+                    .tag("version", tag).description("灰度请求数").register(registry);
+            FunctionCounter.builder("gray.errors", grayVersionStats, stats -> stats.errors(version))
+                    .tag("version", tag).description("灰度请求错误数").register(registry);
+            FunctionCounter.builder("gray.selections", grayVersionStats, stats -> stats.selections(version))
+                    .tag("version", tag).description("灰度负载均衡选择次数").register(registry);
+            FunctionCounter.builder("gray.no-instance", grayVersionStats, stats -> stats.noInstances(version))
+                    .tag("version", tag).description("灰度负载均衡无可用实例次数").register(registry);
+            long[] bounds = GrayVersionStats.LATENCY_BUCKET_MILLIS;
+            for (int i = 0; i <= bounds.length; i++) {
+                int bucket = i;
+                FunctionCounter.builder("gray.latency", grayVersionStats,
+                                stats -> stats.latencyCumulativeCount(version, bucket))
+                        .tag("version", tag)
+                        .tag("le", i < bounds.length ? String.valueOf(bounds[i]) : "+Inf")
+                        .description("灰度请求延迟分布（毫秒）").register(registry);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.jiabin.starter.module.practice.metrics;
+
+import org.jiabin.starter.module.practice.enums.GrayStatusEnum;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按版本（生产、灰度）统计的请求数、错误数、延迟分布与负载均衡选择次数
+ * 全部使用 LongAdder 累加，请求线程不加锁、不分配对象；统计值只增不减，由使用方按差值计算时间窗口内的数据
+ */
+public class GrayVersionStats {
+
+    /**
+     * 延迟分布桶上限（毫秒），最后一个桶为无上限
+     */
+    public static final long[] LATENCY_BUCKET_MILLIS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final VersionStats prodStats = new VersionStats();
+
+    private final VersionStats grayStats = new VersionStats();
+
+    /**
+     * 记录一次请求
+     * @param grayStatusEnum 请求的灰度标记，只统计 PROD、GRAY
+     * @param elapsedNanos 耗时，单位：纳秒
+     * @param error 是否失败
+     */
+    public void record(GrayStatusEnum grayStatusEnum, long elapsedNanos, boolean error) {
+        VersionStats stats = getStats(grayStatusEnum);
+        if (stats == null) {
+            return;
+        }
+        stats.requests.increment();
+        if (error) {
+            stats.errors.increment();
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKET_MILLIS.length && millis > LATENCY_BUCKET_MILLIS[bucket]) {
+            bucket++;
+        }
+        stats.latencyBuckets[bucket].increment();
+    }
+
+    /**
+     * 记录一次负载均衡选择
+     * @param grayStatusEnum 请求的灰度标记，只统计 PROD、GRAY
+     * @param chosen 是否选到了服务实例
+     */
+    public void recordSelection(GrayStatusEnum grayStatusEnum, boolean chosen) {
+        VersionStats stats = getStats(grayStatusEnum);
+        if (stats == null) {
+            return;
+        }
+        (chosen ? stats.selections : stats.noInstances).increment();
+    }
+
+    /**
+     * 当前累计值
+     */
+    public Snapshot snapshot(GrayStatusEnum grayStatusEnum) {
+        VersionStats stats = getStats(grayStatusEnum);
+        if (stats == null) {
+            return null;
+        }
+        long[] buckets = new long[stats.latencyBuckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = stats.latencyBuckets[i].sum();
+        }
+        return new Snapshot(stats.requests.sum(), stats.errors.sum(), buckets);
+    }
+
+    public long requests(GrayStatusEnum grayStatusEnum) {
+        VersionStats stats = getStats(grayStatusEnum);
+        return stats == null ? 0 : stats.requests.sum();
+    }
+
+    public long errors(GrayStatusEnum grayStatusEnum) {
+        VersionStats stats = getStats(grayStatusEnum);
+        return stats == null ? 0 : stats.errors.sum();
+    }
+
+    public long selections(GrayStatusEnum grayStatusEnum) {
+        VersionStats stats = getStats(grayStatusEnum);
+        return stats == null ? 0 : stats.selections.sum();
+    }
+
+    public long noInstances(GrayStatusEnum grayStatusEnum) {
+        VersionStats stats = getStats(grayStatusEnum);
+        return stats == null ? 0 : stats.noInstances.sum();
+    }
+
+    /**
+     * 延迟不超过指定桶上限的请求数（累计）
+     */
+    public long latencyCumulativeCount(GrayStatusEnum grayStatusEnum, int bucket) {
+        VersionStats stats = getStats(grayStatusEnum);
+        if (stats == null) {
+            return 0;
+        }
+        long count = 0;
+        for (int i = 0; i <= bucket; i++) {
+            count += stats.latencyBuckets[i].sum();
+        }
+        return count;
+    }
+
+    private VersionStats getStats(GrayStatusEnum grayStatusEnum) {
+        if (grayStatusEnum == GrayStatusEnum.PROD) {
+            return prodStats;
+        }
+        if (grayStatusEnum == GrayStatusEnum.GRAY) {
+            return grayStats;
+        }
+        return null;
+    }
+
+    private static final class VersionStats {
+
+        private final LongAdder requests = new LongAdder();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final LongAdder selections = new LongAdder();
+
+        private final LongAdder noInstances = new LongAdder();
+
+        private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKET_MILLIS.length + 1];
+
+        private VersionStats() {
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                latencyBuckets[i] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * 累计值快照
+     */
+    public static final class Snapshot {
+
+        private final long requests;
+
+        private final long errors;
+
+        private final long[] latencyBuckets;
+
+        private Snapshot(long requests, long errors, long[] latencyBuckets) {
+            this.requests = requests;
+            this.errors = errors;
+            this.latencyBuckets = latencyBuckets;
+        }
+
+        /**
+         * 与上一次快照的差值（时间窗口内的数据）
+         */
+        public Snapshot minus(Snapshot previous) {
+            if (previous == null) {
+                return this;
+            }
+            long[] buckets = new long[latencyBuckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = latencyBuckets[i] - previous.latencyBuckets[i];
+            }
+            return new Snapshot(requests - previous.requests, errors - previous.errors, buckets);
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getErrorRate() {
+            return requests == 0 ? 0D : (double) errors / requests;
+        }
+
+        /**
+         * 延迟分位数（毫秒），在所在桶的上下限之间按桶内均匀分布线性插值，落在最后一个桶时返回 Long.MAX_VALUE
+         * @param quantile 0 ~ 1
+         */
+        public long getLatencyQuantile(double quantile) {
+            long total = 0;
+            for (long count : latencyBuckets) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            double rank = total * quantile;
+            long count = 0;
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                if (latencyBuckets[i] == 0) {
+                    continue;
+                }
+                if (count + latencyBuckets[i] >= rank) {
+                    if (i >= LATENCY_BUCKET_MILLIS.length) {
+                        return Long.MAX_VALUE;
+                    }
+                    long lower = i == 0 ? 0 : LATENCY_BUCKET_MILLIS[i - 1];
+                    long upper = LATENCY_BUCKET_MILLIS[i];
+                    double fraction = (rank - count) / latencyBuckets[i];
+                    return Math.round(lower + (upper - lower) * Math.max(0D, fraction));
+                }
+                count += latencyBuckets[i];
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -41,7 +41,49 @@ public class GrayGatewayProperties {
     private List<String> grayCityList = new ArrayList<>();
 
     /**
-     * 使用灰度版本用户编号数组（我们系统不会在网关获取用户编号这种方法如果需要可以自己实现一下）
+     * 使用灰度版本用户编号数组（从 grayUserNoHeader 请求头中获取用户编号）
      */
     private List<String> grayUserNoList = new ArrayList<>();
-}
\ No newline at end of file
+
+    /**
+     * 用户编号请求头
+     */
+    private String grayUserNoHeader = "userNo";
+
+    /**
+     * 按比例灰度：调用灰度版本的流量比例（百分比，0 ~ 100，支持两位小数），0 表示不按比例灰度
+     * PS：按用户标识一致性哈希，同一个用户始终调用同一个版本，逐步调大比例即可完成灰度放量
+     */
+    private Double grayWeight = 0D;
+
+    /**
+     * 按比例灰度的用户标识请求头（按顺序取第一个存在的），都不存在时使用客户端IP
+     */
+    private List<String> grayWeightKeyHeaders = new ArrayList<>();
+
+    /**
+     * 灰度版本自动回滚：灰度版本错误率或延迟明显高于生产版本时关闭灰度开关，全部请求路由到生产版本，灰度配置变化并刷新后重新开始灰度
+     * PS：启动时开启才会注册分析任务，运行中可以刷新为 false 暂停回滚判断
+     */
+    private Boolean autoRollback = false;
+
+    /**
+     * 自动回滚分析间隔（秒，启动时读取）
+     */
+    private Long analysisIntervalSeconds = 30L;
+
+    /**
+     * 分析间隔内灰度版本的最少请求数，请求数不足时不做判断
+     */
+    private Long analysisMinRequests = 200L;
+
+    /**
+     * 灰度版本错误率最多可以比生产版本高多少（0 ~ 1），超过且统计显著时回滚
+     */
+    private Double maxErrorRateIncrease = 0.01D;
+
+    /**
+     * 灰度版本 P95 延迟最多是生产版本的多少倍，超过时回滚
+     */
+    private Double maxLatencyRatio = 1.5D;
+}
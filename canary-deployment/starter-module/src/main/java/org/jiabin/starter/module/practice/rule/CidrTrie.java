@@ -0,0 +1,145 @@
+package org.jiabin.starter.module.practice.rule;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * IP/CIDR 前缀树
+ * 按地址的二进制位逐位建树，查找耗时只与地址长度（IPv4 32 位，IPv6 128 位）有关，与配置的 IP 数量无关
+ * 构建完成后只读，可以在多个线程中共享
+ */
+final class CidrTrie {
+
+    private final Node ipv4Root = new Node();
+
+    private final Node ipv6Root = new Node();
+
+    private int size;
+
+    /**
+     * 添加 IP 或 CIDR，如 127.0.0.1、10.0.0.0/8、fe80::/10
+     * @throws IllegalArgumentException 格式不正确
+     */
+    void add(String cidr) {
+        String value = cidr.trim();
+        int slash = value.indexOf('/');
+        byte[] address = parseAddress(slash < 0 ? value : value.substring(0, slash));
+        if (address == null) {
+            throw new IllegalArgumentException("Invalid gray IP: " + cidr);
+        }
+        int maxBits = address.length * 8;
+        int prefixLength = maxBits;
+        if (slash >= 0) {
+            try {
+                prefixLength = Integer.parseInt(value.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid gray IP: " + cidr, e);
+            }
+            if (prefixLength < 0 || prefixLength > maxBits) {
+                throw new IllegalArgumentException("Invalid gray IP: " + cidr);
+            }
+        }
+        Node node = address.length == 4 ? ipv4Root : ipv6Root;
+        for (int i = 0; i < prefixLength; i++) {
+            int bit = bit(address, i);
+            if (node.children[bit] == null) {
+                node.children[bit] = new Node();
+            }
+            node = node.children[bit];
+        }
+        node.terminal = true;
+        size++;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 地址是否在任一 IP/CIDR 范围内
+     * @param address 4 字节（IPv4）或 16 字节（IPv6）地址
+     */
+    boolean contains(byte[] address) {
+        if (address == null) {
+            return false;
+        }
+        Node node = address.length == 4 ? ipv4Root : ipv6Root;
+        int maxBits = address.length * 8;
+        for (int i = 0; ; i++) {
+            if (node.terminal) {
+                return true;
+            }
+            if (i == maxBits) {
+                return false;
+            }
+            node = node.children[bit(address, i)];
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 解析 IP 字面量，不做 DNS 解析
+     * @return 格式不正确时返回 null
+     */
+    static byte[] parseAddress(String ip) {
+        if (ip == null || ip.isEmpty()) {
+            return null;
+        }
+        if (ip.indexOf(':') >= 0) {
+            return parseIpv6(ip);
+        }
+        byte[] address = new byte[4];
+        int part = 0;
+        int value = -1;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c == '.') {
+                if (value < 0 || part == 3) {
+                    return null;
+                }
+                address[part++] = (byte) value;
+                value = -1;
+            } else if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+        }
+        if (value < 0 || part != 3) {
+            return null;
+        }
+        address[3] = (byte) value;
+        return address;
+    }
+
+    private static byte[] parseIpv6(String ip) {
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            // 只接受 IPv6 字面量，避免 InetAddress 做 DNS 解析
+            if (Character.digit(c, 16) < 0 && c != ':' && c != '.' && c != '[' && c != ']' && c != '%') {
+                return null;
+            }
+        }
+        try {
+            return InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static int bit(byte[] address, int index) {
+        return (address[index >>> 3] >>> (7 - (index & 7))) & 1;
+    }
+
+    private static final class Node {
+
+        private final Node[] children = new Node[2];
+
+        private boolean terminal;
+    }
+}
@@ -0,0 +1,15 @@
+package org.jiabin.starter.module.practice.rule;
+
+/**
+ * 根据 IP 获取城市名称，用于按城市灰度
+ * 默认实现只识别本地和内网地址，需要识别公网城市时可以注册自己的实现（例如基于内存映射的 ip2region.xdb 查询）
+ */
+public interface GrayCityResolver {
+
+    /**
+     * 获取城市名称
+     * @param address 4 字节（IPv4）或 16 字节（IPv6）地址
+     * @return 城市名称，未知时返回 null
+     */
+    String resolve(byte[] address);
+}
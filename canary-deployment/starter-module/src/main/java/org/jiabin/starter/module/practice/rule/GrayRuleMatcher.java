@@ -0,0 +1,134 @@
+package org.jiabin.starter.module.practice.rule;
+
+import org.jiabin.starter.module.practice.properties.GrayGatewayProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 灰度规则（不可变）
+ * 由 {@link GrayGatewayProperties} 编译而来，配置刷新时整体重建：
+ * IP 数组编译为 CIDR 前缀树，城市和用户编号数组编译为 HashSet，查找耗时与数组大小无关；
+ * 客户端 IP 每个请求只解析一次
+ */
+public final class GrayRuleMatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(GrayRuleMatcher.class);
+
+    private static final String REAL_IP_HEADER = "X-Real-IP";
+
+    private final String grayHeadKey;
+
+    private final String grayHeadValue;
+
+    private final CidrTrie ipTrie;
+
+    private final Set<String> citySet;
+
+    private final GrayCityResolver cityResolver;
+
+    private final String userNoHeader;
+
+    private final Set<String> userNoSet;
+
+    private final GrayWeightRule weightRule;
+
+    private GrayRuleMatcher(String grayHeadKey, String grayHeadValue, CidrTrie ipTrie, Set<String> citySet,
+                            GrayCityResolver cityResolver, String userNoHeader, Set<String> userNoSet,
+                            GrayWeightRule weightRule) {
+        this.grayHeadKey = grayHeadKey;
+        this.grayHeadValue = grayHeadValue;
+        this.ipTrie = ipTrie;
+        this.citySet = citySet;
+        this.cityResolver = cityResolver;
+        this.userNoHeader = userNoHeader;
+        this.userNoSet = userNoSet;
+        this.weightRule = weightRule;
+    }
+
+    /**
+     * 编译灰度规则，格式不正确的 IP 会被忽略并输出警告
+     */
+    public static GrayRuleMatcher compile(GrayGatewayProperties properties, GrayCityResolver cityResolver) {
+        CidrTrie ipTrie = new CidrTrie();
+        for (String ip : nullToEmpty(properties.getGrayIPList())) {
+            try {
+                ipTrie.add(ip);
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignore gray IP: {}", e.getMessage());
+            }
+        }
+        Set<String> citySet = toSet(properties.getGrayCityList());
+        Set<String> userNoSet = toSet(properties.getGrayUserNoList());
+        return new GrayRuleMatcher(properties.getGrayHeadKey(), properties.getGrayHeadValue(),
+                ipTrie.isEmpty() ? null : ipTrie,
+                citySet.isEmpty() || cityResolver == null ? null : citySet, cityResolver,
+                properties.getGrayUserNoHeader(), userNoSet.isEmpty() ? null : userNoSet,
+                GrayWeightRule.of(properties.getGrayWeight(), properties.getGrayWeightKeyHeaders()));
+    }
+
+    /**
+     * 是否需要调用灰度版本
+     */
+    public boolean match(ServerHttpRequest request) {
+        HttpHeaders headers = request.getHeaders();
+        if (grayHeadKey != null && grayHeadValue != null && grayHeadValue.equals(headers.getFirst(grayHeadKey))) {
+            return true;
+        }
+        if (userNoSet != null && userNoHeader != null) {
+            String userNo = headers.getFirst(userNoHeader);
+            if (userNo != null && userNoSet.contains(userNo)) {
+                return true;
+            }
+        }
+        if (ipTrie != null || citySet != null) {
+            byte[] address = clientAddress(request);
+            if (ipTrie != null && ipTrie.contains(address)) {
+                return true;
+            }
+            if (citySet != null && address != null) {
+                String cityName = cityResolver.resolve(address);
+                if (cityName != null && citySet.contains(cityName)) {
+                    return true;
+                }
+            }
+        }
+        return weightRule.match(request);
+    }
+
+    /**
+     * 客户端 IP，优先使用 X-Real-IP 请求头
+     */
+    private static byte[] clientAddress(ServerHttpRequest request) {
+        String realIP = request.getHeaders().getFirst(REAL_IP_HEADER);
+        if (realIP != null && !realIP.isEmpty()) {
+            return CidrTrie.parseAddress(realIP);
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null || remoteAddress.getAddress() == null) {
+            return null;
+        }
+        return remoteAddress.getAddress().getAddress();
+    }
+
+    private static List<String> nullToEmpty(List<String> list) {
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    private static Set<String> toSet(List<String> list) {
+        Set<String> set = new HashSet<>(Math.max(16, (int) (nullToEmpty(list).size() / .75f) + 1));
+        for (String value : nullToEmpty(list)) {
+            if (value != null && !value.trim().isEmpty()) {
+                set.add(value.trim());
+            }
+        }
+        return set;
+    }
+}
@@ -0,0 +1,103 @@
+package org.jiabin.starter.module.practice.rule;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按比例灰度规则（不可变）
+ * 对用户标识（请求头，没有时使用客户端 IP）做一致性哈希映射到 0 ~ 9999 的桶，桶号小于阈值的请求调用灰度版本，
+ * 同一个用户始终落在同一个桶中，调大比例时已进入灰度的用户不会切回生产版本
+ */
+public final class GrayWeightRule {
+
+    /**
+     * 未开启按比例灰度
+     */
+    public static final GrayWeightRule DISABLED = new GrayWeightRule(0, new String[0]);
+
+    /**
+     * 桶数量，比例精确到 0.01%
+     */
+    private static final int BUCKETS = 10000;
+
+    private static final String REAL_IP_HEADER = "X-Real-IP";
+
+    /**
+     * 灰度桶阈值，桶号小于阈值时调用灰度版本
+     */
+    private final int threshold;
+
+    /**
+     * 用户标识请求头，按顺序取第一个存在的
+     */
+    private final String[] keyHeaders;
+
+    private GrayWeightRule(int threshold, String[] keyHeaders) {
+        this.threshold = threshold;
+        this.keyHeaders = keyHeaders;
+    }
+
+    /**
+     * 构建规则
+     * @param grayWeight 灰度流量比例（百分比，0 ~ 100）
+     * @param keyHeaderList 用户标识请求头
+     */
+    public static GrayWeightRule of(Double grayWeight, List<String> keyHeaderList) {
+        if (grayWeight == null || grayWeight <= 0) {
+            return DISABLED;
+        }
+        int threshold = (int) Math.round(Math.min(grayWeight, 100D) * BUCKETS / 100);
+        String[] keyHeaders = keyHeaderList == null ? new String[0] : keyHeaderList.toArray(new String[0]);
+        return new GrayWeightRule(threshold, keyHeaders);
+    }
+
+    /**
+     * 请求是否落在灰度比例内
+     */
+    public boolean match(ServerHttpRequest request) {
+        if (threshold <= 0) {
+            return false;
+        }
+        if (threshold >= BUCKETS) {
+            return true;
+        }
+        return bucket(keyHash(request)) < threshold;
+    }
+
+    private int keyHash(ServerHttpRequest request) {
+        HttpHeaders headers = request.getHeaders();
+        for (String keyHeader : keyHeaders) {
+            String value = headers.getFirst(keyHeader);
+            if (value != null && !value.isEmpty()) {
+                return value.hashCode();
+            }
+        }
+        String realIP = headers.getFirst(REAL_IP_HEADER);
+        if (realIP != null && !realIP.isEmpty()) {
+            return realIP.hashCode();
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress != null && remoteAddress.getAddress() != null) {
+            return remoteAddress.getAddress().hashCode();
+        }
+        // 没有任何用户标识时随机分配
+        return ThreadLocalRandom.current().nextInt();
+    }
+
+    /**
+     * 哈希值打散后映射到桶（murmur3 fmix32），避免相近的用户编号落在相邻的桶
+     */
+    private static int bucket(int hash) {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, BUCKETS);
+    }
+}
@@ -0,0 +1,25 @@
+package org.jiabin.starter.module.practice.rule;
+
+/**
+ * 默认城市解析：本地回环和内网地址返回"本地"，其他地址未知
+ */
+public class LocalGrayCityResolver implements GrayCityResolver {
+
+    public static final String LOCAL_CITY = "本地";
+
+    private final CidrTrie localTrie = new CidrTrie();
+
+    public LocalGrayCityResolver() {
+        localTrie.add("127.0.0.0/8");
+        localTrie.add("10.0.0.0/8");
+        localTrie.add("172.16.0.0/12");
+        localTrie.add("192.168.0.0/16");
+        localTrie.add("::1/128");
+        localTrie.add("fc00::/7");
+    }
+
+    @Override
+    public String resolve(byte[] address) {
+        return localTrie.contains(address) ? LOCAL_CITY : null;
+    }
+}
@@ -0,0 +1,113 @@
+package org.jiabin.gateway.filter.practice.common.config;
+
+import org.jiabin.gateway.filter.practice.model.WhiteListEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 网关 redis 值序列化基准测试
+ * 比较带类型信息的 JSON 与 Smile 二进制格式的编码、解码耗时,载荷字节数在初始化时输出
+ * @author jiabin.yu
+ * @Date: 2018/10/29
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisSerializerBenchmark {
+
+    /**
+     * 写入格式, json: 历史格式; smile: 二进制格式
+     */
+    @Param({"json", "smile"})
+    private String format;
+
+    private GatewayRedisSerializer serializer;
+
+    private RouteDefinition routeDefinition;
+
+    private WhiteListEntity whiteList;
+
+    private byte[] routeBytes;
+
+    private byte[] whiteListBytes;
+
+    @Setup
+    public void setup() {
+        serializer = new GatewayRedisSerializer(RedisConfig.jackson2JsonRedisSerializer(), "smile".equals(format));
+        routeDefinition = createRouteDefinition();
+        whiteList = createWhiteList();
+        routeBytes = serializer.serialize(routeDefinition);
+        whiteListBytes = serializer.serialize(whiteList);
+        System.out.printf("%n[%s] RouteDefinition: %d bytes, WhiteListEntity: %d bytes%n", format,
+                routeBytes.length, whiteListBytes.length);
+    }
+
+    @Benchmark
+    public byte[] serializeRoute() {
+        return serializer.serialize(routeDefinition);
+    }
+
+    @Benchmark
+    public Object deserializeRoute() {
+        return serializer.deserialize(routeBytes);
+    }
+
+    @Benchmark
+    public byte[] serializeWhiteList() {
+        return serializer.serialize(whiteList);
+    }
+
+    @Benchmark
+    public Object deserializeWhiteList() {
+        return serializer.deserialize(whiteListBytes);
+    }
+
+    private static RouteDefinition createRouteDefinition() {
+        RouteDefinition routeDefinition = new RouteDefinition();
+        routeDefinition.setId("user-service");
+        routeDefinition.setUri(URI.create("lb://user-service"));
+        routeDefinition.setOrder(1);
+        routeDefinition.setPredicates(Arrays.asList(new PredicateDefinition("Path=/api/user/**"),
+                new PredicateDefinition("Method=GET,POST")));
+        routeDefinition.setFilters(Arrays.asList(new FilterDefinition("StripPrefix=1"),
+                new FilterDefinition("ResponseCache=60,Accept")));
+        Map<String, Object> metadata = new HashMap<>(8);
+        metadata.put("rateLimit.replenishRate", 100);
+        metadata.put("rateLimit.burstCapacity", 200);
+        routeDefinition.setMetadata(metadata);
+        return routeDefinition;
+    }
+
+    private static WhiteListEntity createWhiteList() {
+        WhiteListEntity whiteList = new WhiteListEntity();
+        whiteList.setId(1024L);
+        whiteList.setRouteType("user-service");
+        whiteList.setPath("/api/user/login");
+        whiteList.setComment("用户登录");
+        whiteList.setCreateDate(1661234567890L);
+        whiteList.setUpdateDate(1661234567890L);
+        return whiteList;
+    }
+
+}
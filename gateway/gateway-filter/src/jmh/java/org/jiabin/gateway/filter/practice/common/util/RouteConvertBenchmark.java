@@ -0,0 +1,80 @@
+package org.jiabin.gateway.filter.practice.common.util;
+
+import org.jiabin.gateway.filter.practice.model.RouteEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 路由数据库记录转换基准测试
+ * 模拟全量加载路由表, cold: 每次转换前清空定义缓存(首次加载); cached: 更新时间未变化(路由刷新)
+ * @author jiabin.yu
+ * @Date: 2021/10/21
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteConvertBenchmark {
+
+    @Param({"10000"})
+    private int routeCount;
+
+    @Param({"cold", "cached"})
+    private String cache;
+
+    private List<RouteEntity> routeEntityList;
+
+    @Setup
+    public void setup() {
+        long nowTime = System.currentTimeMillis();
+        routeEntityList = new ArrayList<>(routeCount);
+        for (int i = 0; i < routeCount; i++) {
+            RouteEntity routeEntity = new RouteEntity();
+            routeEntity.setId((long) i);
+            routeEntity.setRouteId("service-" + i);
+            routeEntity.setUri("lb://service-" + i);
+            routeEntity.setPredicates("[{\"name\":\"Path\",\"args\":{\"_genkey_0\":\"/service-" + i + "/**\"}},"
+                    + "{\"name\":\"Method\",\"args\":{\"_genkey_0\":\"GET\",\"_genkey_1\":\"POST\"}}]");
+            routeEntity.setFilters("[{\"name\":\"StripPrefix\",\"args\":{\"_genkey_0\":\"1\"}}]");
+            routeEntity.setMetadata("{\"rateLimit.replenishRate\":100,\"rateLimit.burstCapacity\":200}");
+            routeEntity.setFilterOrder(i);
+            routeEntity.setCreateDate(nowTime);
+            routeEntity.setUpdateDate(nowTime);
+            routeEntityList.add(routeEntity);
+        }
+        RouteConvert.toRouteDefinitions(routeEntityList);
+    }
+
+    /**
+     * 单次调用耗时为毫秒级,按调用清空缓存的开销可以忽略
+     */
+    @Setup(Level.Invocation)
+    public void evict() {
+        if ("cold".equals(cache)) {
+            routeEntityList.forEach(routeEntity -> RouteConvert.evict(routeEntity.getRouteId()));
+        }
+    }
+
+    @Benchmark
+    public List<RouteDefinition> toRouteDefinitions() {
+        return RouteConvert.toRouteDefinitions(routeEntityList);
+    }
+
+}
@@ -0,0 +1,106 @@
+package org.jiabin.gateway.filter.practice.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_PREDICATE_ROUTE_ATTR;
+
+/**
+ * @Description: 路由匹配基准测试
+ * linear: 按顺序执行全部路由的断言(默认实现); indexed: 先通过 RouteMatchIndex 筛选候选路由再执行断言
+ * 每个路由一个 Path 断言,请求命中位于中间的路由
+ * @author jiabin.yu
+ * @Date: 2021/10/19
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteMatchBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int routeCount;
+
+    private List<Route> routeList;
+
+    private RouteMatchIndex index;
+
+    private ServerWebExchange exchange;
+
+    @Setup
+    public void setup() {
+        PathRoutePredicateFactory pathRoutePredicateFactory = new PathRoutePredicateFactory();
+        routeList = new ArrayList<>(routeCount);
+        Map<String, RouteDefinition> routeDefinitionMap = new HashMap<>(routeCount * 2);
+        for (int i = 0; i < routeCount; i++) {
+            String routeId = "service-" + i;
+            String pattern = "/" + routeId + "/**";
+            RouteDefinition routeDefinition = new RouteDefinition();
+            routeDefinition.setId(routeId);
+            routeDefinition.setUri(URI.create("lb://" + routeId));
+            routeDefinition.setOrder(i);
+            routeDefinition.setPredicates(Collections.singletonList(new PredicateDefinition("Path=" + pattern)));
+            routeDefinitionMap.put(routeId, routeDefinition);
+            routeList.add(Route.async().id(routeId).uri(routeDefinition.getUri()).order(i)
+                    .predicate(pathRoutePredicateFactory.apply(new PathRoutePredicateFactory.Config()
+                            .setPatterns(Collections.singletonList(pattern))))
+                    .build());
+        }
+        index = RouteMatchIndex.build(routeList, route -> routeDefinitionMap.get(route.getId()));
+        exchange = MockServerWebExchange.from(MockServerHttpRequest
+                .get("/service-" + routeCount / 2 + "/user/info")
+                .header("Host", "gateway.example.com"));
+    }
+
+    @Benchmark
+    public Route linear() {
+        return lookupRoute(routeList);
+    }
+
+    @Benchmark
+    public Route indexed() {
+        return lookupRoute(index.candidates(exchange.getRequest()));
+    }
+
+    /**
+     * 与 IndexedRoutePredicateHandlerMapping#lookupRoute 相同的断言执行方式
+     */
+    private Route lookupRoute(List<Route> candidateList) {
+        return Flux.fromIterable(candidateList)
+                .concatMap(route -> Mono.just(route).filterWhen(r -> {
+                    exchange.getAttributes().put(GATEWAY_PREDICATE_ROUTE_ATTR, r.getId());
+                    return r.getPredicate().apply(exchange);
+                }))
+                .next()
+                .block();
+    }
+
+}
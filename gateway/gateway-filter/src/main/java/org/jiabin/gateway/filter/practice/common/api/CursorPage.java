@@ -0,0 +1,43 @@
+package org.jiabin.gateway.filter.practice.common.api;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * @Description: 游标分页结果
+ * 以上一页最后一条记录的位置作为下一页的查询起点,查询耗时与页码无关
+ * @author jiabin.yu
+ * @Date: 2022/8/23
+ */
+@Data
+public class CursorPage<T> implements Serializable {
+
+    private static final long serialVersionUID = 3206713462950142176L;
+
+    /**
+     * 当前页数据
+     */
+    private List<T> records;
+
+    /**
+     * 下一页游标(不透明字符串,原样传回即可),没有下一页时为 null
+     */
+    private String nextCursor;
+
+    /**
+     * 是否有下一页
+     */
+    private Boolean hasMore;
+
+    public CursorPage() {
+    }
+
+    public CursorPage(List<T> records, String nextCursor, Boolean hasMore) {
+        this.records = records;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+}
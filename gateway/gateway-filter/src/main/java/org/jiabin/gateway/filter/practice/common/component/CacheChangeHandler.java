@@ -0,0 +1,31 @@
+package org.jiabin.gateway.filter.practice.common.component;
+
+import org.jiabin.gateway.filter.practice.model.CacheChangeEvent;
+
+/**
+ * @Description: 网关本地缓存变更处理接口
+ * @author jiabin.yu
+ * @Date: 2022/8/25
+ */
+public interface CacheChangeHandler {
+
+    /**
+     * 处理的缓存类型
+     *
+     * @return
+     */
+    String cacheType();
+
+    /**
+     * 应用单条变更
+     *
+     * @param event
+     */
+    void applyChange(CacheChangeEvent event);
+
+    /**
+     * 全量重新同步
+     */
+    void resync();
+
+}
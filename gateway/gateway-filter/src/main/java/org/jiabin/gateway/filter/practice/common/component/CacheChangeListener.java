@@ -0,0 +1,108 @@
+package org.jiabin.gateway.filter.practice.common.component;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jiabin.gateway.filter.practice.common.constant.CacheChangeConst;
+import org.jiabin.gateway.filter.practice.model.CacheChangeEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Description: 网关缓存变更监听器
+ * 按版本号增量应用其他节点的变更,发现版本号不连续时从 Redis 全量重新同步
+ * @author jiabin.yu
+ * @Date: 2022/8/25
+ */
+@Slf4j
+@Component
+public class CacheChangeListener implements MessageListener {
+
+    @Autowired
+    private RedisComponent redisComponent;
+    @Autowired
+    private CacheChangePublisher cacheChangePublisher;
+    @Autowired
+    private List<CacheChangeHandler> handlerList;
+
+    /**
+     * 各缓存类型已同步的版本号
+     */
+    private final Map<String, Long> versionMap = new ConcurrentHashMap<>(16);
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisComponent.deserialize(message.getBody());
+        if (!(body instanceof CacheChangeEvent)) {
+            log.warn("无法识别的网关缓存变更消息: {}", body);
+            return;
+        }
+        apply((CacheChangeEvent) body);
+    }
+
+    /**
+     * 标记缓存类型已全量同步至指定版本
+     *
+     * @param type 缓存类型
+     * @param version 全量加载前读取的版本号
+     */
+    public void markSynced(String type, long version) {
+        versionMap.put(type, version);
+    }
+
+    /**
+     * 从 Redis 全量重新同步
+     *
+     * @param type 缓存类型
+     */
+    public synchronized void resync(String type) {
+        CacheChangeHandler handler = getHandler(type);
+        if (handler == null) {
+            return;
+        }
+        long version = cacheChangePublisher.currentVersion(type);
+        handler.resync();
+        versionMap.put(type, version);
+    }
+
+    private synchronized void apply(CacheChangeEvent event) {
+        CacheChangeHandler handler = getHandler(event.getType());
+        if (handler == null) {
+            return;
+        }
+        Long syncedVersion = versionMap.get(event.getType());
+        if (syncedVersion != null && event.getVersion() <= syncedVersion) {
+            // 全量同步时已包含该变更
+            return;
+        }
+        if (syncedVersion == null || event.getVersion() != syncedVersion + 1) {
+            log.info("网关缓存版本号不连续,全量同步, type: {}, syncedVersion: {}, eventVersion: {}",
+                    event.getType(), syncedVersion, event.getVersion());
+            resync(event.getType());
+            return;
+        }
+        // 本节点发出的变更已在本地生效
+        if (!CacheChangePublisher.NODE_ID.equals(event.getNodeId())) {
+            if (CacheChangeConst.OPERATION_RELOAD.equals(event.getOperation())) {
+                handler.resync();
+            } else {
+                handler.applyChange(event);
+            }
+        }
+        versionMap.put(event.getType(), event.getVersion());
+    }
+
+    private CacheChangeHandler getHandler(String type) {
+        for (CacheChangeHandler handler : handlerList) {
+            if (handler.cacheType().equals(type)) {
+                return handler;
+            }
+        }
+        return null;
+    }
+
+}
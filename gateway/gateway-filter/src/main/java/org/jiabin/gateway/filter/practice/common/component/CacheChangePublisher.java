@@ -0,0 +1,103 @@
+package org.jiabin.gateway.filter.practice.common.component;
+
+import cn.hutool.core.util.IdUtil;
+import org.jiabin.gateway.filter.practice.common.constant.CacheChangeConst;
+import org.jiabin.gateway.filter.practice.common.constant.RedisKeyConst;
+import org.jiabin.gateway.filter.practice.model.CacheChangeEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * @Description: 网关缓存变更发布者
+ * 每次变更在 Redis 中为对应缓存类型生成连续递增的版本号,并通过 pub/sub 通知所有网关节点
+ * @author jiabin.yu
+ * @Date: 2022/8/25
+ */
+@Component
+public class CacheChangePublisher {
+
+    /**
+     * 当前节点 ID
+     */
+    public static final String NODE_ID = IdUtil.fastSimpleUUID();
+
+    @Autowired
+    private RedisComponent redisComponent;
+    @Autowired
+    private ReactiveRedisComponent reactiveRedisComponent;
+
+    /**
+     * 发布新增或更新事件
+     *
+     * @param type 缓存类型
+     * @param key 元素 key
+     * @param value 元素值
+     */
+    public void publishPut(String type, String key, Object value) {
+        publish(type, CacheChangeConst.OPERATION_PUT, key, value);
+    }
+
+    /**
+     * 发布删除事件
+     *
+     * @param type 缓存类型
+     * @param key 元素 key
+     */
+    public void publishRemove(String type, String key) {
+        publish(type, CacheChangeConst.OPERATION_REMOVE, key, null);
+    }
+
+    /**
+     * 发布批量变更事件
+     *
+     * @param type 缓存类型
+     */
+    public void publishReload(String type) {
+        publish(type, CacheChangeConst.OPERATION_RELOAD, null, null);
+    }
+
+    /**
+     * 以非阻塞方式发布变更事件
+     *
+     * @param type 缓存类型
+     * @param operation 操作类型
+     * @param key 元素 key
+     * @param value 元素值
+     * @return
+     */
+    public Mono<Void> publishReactive(String type, String operation, String key, Object value) {
+        return reactiveRedisComponent.increment(RedisKeyConst.KEY_GATEWAY_CACHE_VERSION_PREFIX + type, 1)
+                .flatMap(version -> reactiveRedisComponent.publish(RedisKeyConst.CHANNEL_GATEWAY_CACHE_CHANGE,
+                        createEvent(type, operation, key, value, version)))
+                .then();
+    }
+
+    /**
+     * 查询缓存类型当前版本号
+     *
+     * @param type 缓存类型
+     * @return
+     */
+    public long currentVersion(String type) {
+        return redisComponent.increment(RedisKeyConst.KEY_GATEWAY_CACHE_VERSION_PREFIX + type, 0);
+    }
+
+    private void publish(String type, String operation, String key, Object value) {
+        long version = redisComponent.increment(RedisKeyConst.KEY_GATEWAY_CACHE_VERSION_PREFIX + type, 1);
+        redisComponent.publish(RedisKeyConst.CHANNEL_GATEWAY_CACHE_CHANGE,
+                createEvent(type, operation, key, value, version));
+    }
+
+    private CacheChangeEvent createEvent(String type, String operation, String key, Object value, long version) {
+        CacheChangeEvent event = new CacheChangeEvent();
+        event.setType(type);
+        event.setOperation(operation);
+        event.setKey(key);
+        event.setValue(value);
+        event.setVersion(version);
+        event.setNodeId(NODE_ID);
+        return event;
+    }
+
+}
@@ -0,0 +1,164 @@
+package org.jiabin.gateway.filter.practice.common.component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: 网关指标
+ * 计数器与计时器在首次使用时创建并缓存,请求线程只做一次 map 查找和一次原子累加
+ * 通过 actuator 的 /actuator/metrics 与 /actuator/prometheus(引入 registry 时) 查看
+ * @author jiabin.yu
+ * @Date: 2022/8/23
+ */
+@Component
+public class GatewayMetrics {
+
+    /**
+     * 路由请求耗时
+     */
+    public static final String METRIC_ROUTE_REQUESTS = "gateway.route.requests";
+    /**
+     * 白名单匹配次数
+     */
+    public static final String METRIC_WHITE_LIST = "gateway.whitelist";
+    /**
+     * 鉴权失败次数
+     */
+    public static final String METRIC_UNAUTHORIZED = "gateway.auth.unauthorized";
+
+    /**
+     * 限流结果次数
+     */
+    public static final String METRIC_RATE_LIMIT = "gateway.ratelimit";
+    /**
+     * 限流令牌申请耗时
+     */
+    public static final String METRIC_RATE_LIMIT_LEASE = "gateway.ratelimit.lease";
+
+    /**
+     * 未匹配到路由时的路由 id
+     */
+    public static final String ROUTE_NONE = "none";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Counter whiteListHitCounter;
+
+    private final Counter whiteListMissCounter;
+
+    private final Counter unauthorizedCounter;
+
+    /**
+     * 路由计时器, key: 路由 id + 结果
+     */
+    private final Map<String, Timer> timerMap = new ConcurrentHashMap<>(16);
+
+    /**
+     * 限流计数器, key: 路由 id + 结果
+     */
+    private final Map<String, Counter> rateLimitCounterMap = new ConcurrentHashMap<>(16);
+
+    private final Timer rateLimitLeaseTimer;
+
+    /**
+     * 是否输出直方图
+     */
+    @Value("${gateway.metrics.histogram:true}")
+    private boolean histogram;
+
+    public GatewayMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.whiteListHitCounter = Counter.builder(METRIC_WHITE_LIST)
+                .tag("result", "hit")
+                .description("白名单命中次数")
+                .register(meterRegistry);
+        this.whiteListMissCounter = Counter.builder(METRIC_WHITE_LIST)
+                .tag("result", "miss")
+                .description("白名单未命中次数")
+                .register(meterRegistry);
+        this.unauthorizedCounter = Counter.builder(METRIC_UNAUTHORIZED)
+                .description("鉴权失败(401)次数")
+                .register(meterRegistry);
+        this.rateLimitLeaseTimer = Timer.builder(METRIC_RATE_LIMIT_LEASE)
+                .description("限流令牌申请(redis)耗时")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一次路由请求耗时
+     *
+     * @param routeId 路由 id
+     * @param outcome 请求结果
+     * @param elapsedNanos 耗时,单位: 纳秒
+     */
+    public void recordRequest(String routeId, String outcome, long elapsedNanos) {
+        String key = routeId + '|' + outcome;
+        Timer timer = timerMap.get(key);
+        if (timer == null) {
+            timer = timerMap.computeIfAbsent(key, k -> Timer.builder(METRIC_ROUTE_REQUESTS)
+                    .tag("routeId", routeId)
+                    .tag("outcome", outcome)
+                    .description("路由请求耗时")
+                    .publishPercentileHistogram(histogram)
+                    .register(meterRegistry));
+        }
+        timer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 白名单命中
+     */
+    public void whiteListHit() {
+        whiteListHitCounter.increment();
+    }
+
+    /**
+     * 白名单未命中
+     */
+    public void whiteListMiss() {
+        whiteListMissCounter.increment();
+    }
+
+    /**
+     * 鉴权失败
+     */
+    public void unauthorized() {
+        unauthorizedCounter.increment();
+    }
+
+    /**
+     * 记录一次限流结果
+     *
+     * @param routeId 路由 id
+     * @param result 限流结果
+     */
+    public void rateLimit(String routeId, String result) {
+        String key = routeId + '|' + result;
+        Counter counter = rateLimitCounterMap.get(key);
+        if (counter == null) {
+            counter = rateLimitCounterMap.computeIfAbsent(key, k -> Counter.builder(METRIC_RATE_LIMIT)
+                    .tag("routeId", routeId)
+                    .tag("result", result)
+                    .description("限流结果次数")
+                    .register(meterRegistry));
+        }
+        counter.increment();
+    }
+
+    /**
+     * 记录一次限流令牌申请耗时
+     *
+     * @param elapsedNanos 耗时,单位: 纳秒
+     */
+    public void recordRateLimitLease(long elapsedNanos) {
+        rateLimitLeaseTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+}
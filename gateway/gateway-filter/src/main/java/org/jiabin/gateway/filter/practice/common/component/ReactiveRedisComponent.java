@@ -0,0 +1,234 @@
+package org.jiabin.gateway.filter.practice.common.component;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description: 响应式 redis 工具类
+ * 与 {@link RedisComponent} 提供相同的操作, 不阻塞调用线程, 用于网关过滤器及路由持久层
+ * @author jiabin.yu
+ * @Date: 2022/8/25
+ */
+@Component
+public class ReactiveRedisComponent {
+
+    @Autowired
+    private ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+
+    /**
+     * 写入缓存
+     * 不指定保存时间,永久保存
+     *
+     * @param key
+     * @param value
+     * @return
+     */
+    public Mono<Boolean> set(String key, Object value) {
+        return reactiveRedisTemplate.opsForValue().set(key, value);
+    }
+
+    /**
+     * 写入缓存
+     * 指定保存时间,单位：秒,超时将自动删除
+     *
+     * @param key
+     * @param value
+     * @param expireTime
+     * @return
+     */
+    public Mono<Boolean> set(String key, Object value, Long expireTime) {
+        return reactiveRedisTemplate.opsForValue().set(key, value, Duration.ofSeconds(expireTime));
+    }
+
+    /**
+     * 判断缓存中是否有对应的 key
+     *
+     * @param key
+     * @return
+     */
+    public Mono<Boolean> exists(String key) {
+        return reactiveRedisTemplate.hasKey(key).defaultIfEmpty(Boolean.FALSE);
+    }
+
+    /**
+     * 读取缓存
+     *
+     * @param key
+     * @return
+     */
+    public Mono<Object> get(String key) {
+        return reactiveRedisTemplate.opsForValue().get(key);
+    }
+
+    /**
+     * 删除一条记录
+     *
+     * @param key
+     * @return
+     */
+    public Mono<Boolean> remove(String key) {
+        return reactiveRedisTemplate.delete(key).map(count -> count > 0);
+    }
+
+    /**
+     * 批量删除
+     *
+     * @param keyList
+     * @return
+     */
+    public Mono<Long> removeBatch(List<String> keyList) {
+        if (keyList.isEmpty()) {
+            return Mono.just(0L);
+        }
+        return reactiveRedisTemplate.delete(keyList.toArray(new String[0]));
+    }
+
+    /**
+     * 向 map 集合插入一条数据
+     *
+     * @param key 集合 key
+     * @param hashKey 元素 key
+     * @param value 元素值
+     * @return
+     */
+    public Mono<Boolean> mapPut(String key, String hashKey, Object value) {
+        return reactiveRedisTemplate.opsForHash().put(key, hashKey, value);
+    }
+
+    /**
+     * 向 map 集合插入多条数据
+     *
+     * @param key 集合 key
+     * @param elementMap 元素 map 集合
+     * @return
+     */
+    public Mono<Boolean> mapPutBatch(String key, Map<String, Object> elementMap) {
+        return reactiveRedisTemplate.opsForHash().putAll(key, elementMap);
+    }
+
+    /**
+     * 从 map 集合中获取一个元素
+     *
+     * @param key 集合 key
+     * @param hashKey 元素 key
+     * @param clazz 元素值类
+     * @return
+     */
+    public <V> Mono<V> mapGet(String key, String hashKey, Class<V> clazz) {
+        return reactiveRedisTemplate.opsForHash().get(key, hashKey).cast(clazz);
+    }
+
+    /**
+     * 从 map 集合中获取多个元素(HMGET)
+     *
+     * @param key 集合 key
+     * @param hashKeys 元素 key 列表
+     * @param clazz 元素值类
+     * @return 与 hashKeys 顺序一致,不存在的元素为 null
+     */
+    @SuppressWarnings("unchecked")
+    public <V> Mono<List<V>> mapMultiGet(String key, Collection<String> hashKeys, Class<V> clazz) {
+        if (hashKeys.isEmpty()) {
+            return Mono.just(new ArrayList<>());
+        }
+        return reactiveRedisTemplate.opsForHash().multiGet(key, new ArrayList<>(hashKeys))
+                .map(valueList -> (List<V>) valueList);
+    }
+
+    /**
+     * 游标方式(HSCAN)遍历 map 集合元素, 按下游需求分批读取
+     *
+     * @param key 集合 key
+     * @param count 每批次读取数量
+     * @param clazz 元素值类
+     * @return
+     */
+    public <V> Flux<V> mapScan(String key, long count, Class<V> clazz) {
+        return reactiveRedisTemplate.opsForHash().scan(key, ScanOptions.scanOptions().count(count).build())
+                .map(entry -> clazz.cast(entry.getValue()));
+    }
+
+    /**
+     * 从 map 集合中读取所有元素
+     *
+     * @param key 集合 key
+     * @param clazz 元素值类
+     * @return
+     */
+    public <V> Flux<V> mapGetAll(String key, Class<V> clazz) {
+        return reactiveRedisTemplate.opsForHash().values(key).cast(clazz);
+    }
+
+    /**
+     * 删除 map 集合中一个元素
+     *
+     * @param key 集合 key
+     * @param hashKey 元素 key
+     * @return
+     */
+    public Mono<Long> mapRemove(String key, String hashKey) {
+        return reactiveRedisTemplate.opsForHash().remove(key, hashKey);
+    }
+
+    /**
+     * 批量删除 map 集合元素
+     *
+     * @param key 集合 key
+     * @param hashKeyList 元素 key 列表
+     * @return
+     */
+    public Mono<Long> mapRemoveBatch(String key, List<String> hashKeyList) {
+        return reactiveRedisTemplate.opsForHash().remove(key, hashKeyList.toArray());
+    }
+
+    /**
+     * 自增
+     *
+     * @param key
+     * @param delta 增量,为 0 时仅读取当前值
+     * @return 自增后的值
+     */
+    public Mono<Long> increment(String key, long delta) {
+        return reactiveRedisTemplate.opsForValue().increment(key, delta);
+    }
+
+    /**
+     * 发布消息
+     *
+     * @param channel 频道
+     * @param message 消息
+     * @return 收到消息的订阅者数量
+     */
+    public Mono<Long> publish(String channel, Object message) {
+        return reactiveRedisTemplate.convertAndSend(channel, message);
+    }
+
+    /**
+     * 执行 lua 脚本
+     * 参数与返回值按字符串序列化,不经过值序列化器
+     *
+     * @param script 脚本
+     * @param keys 脚本 KEYS
+     * @param args 脚本 ARGV
+     * @return
+     */
+    public <T> Flux<T> execute(RedisScript<T> script, List<String> keys, List<String> args) {
+        return reactiveStringRedisTemplate.execute(script, keys, args);
+    }
+
+}
@@ -1,16 +1,28 @@
 package org.jiabin.gateway.filter.practice.common.component;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.HashSet;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @Description: redis 工具类
@@ -69,6 +81,18 @@ public class RedisComponent implements Serializable {
         return redisTemplate.opsForValue().get(key);
     }
 
+    /**
+     * 自增
+     *
+     * @param key
+     * @param delta 增量,为 0 时仅读取当前值
+     * @return 自增后的值
+     */
+    public long increment(String key, long delta) {
+        Long value = redisTemplate.opsForValue().increment(key, delta);
+        return value == null ? 0L : value;
+    }
+
     /**
      * 删除一条记录
      *
@@ -84,10 +108,10 @@ public class RedisComponent implements Serializable {
      *
      * @param keyList
      */
+    @SuppressWarnings("unchecked")
     public void removeBatch(List<String> keyList) {
-        Set<Serializable> keys = new HashSet<>(keyList);
-        if (keys.size() > 0){
-            redisTemplate.delete(keys);
+        if (!keyList.isEmpty()) {
+            redisTemplate.delete((Collection<Serializable>) (Collection<?>) keyList);
         }
     }
 
@@ -112,6 +136,58 @@ public class RedisComponent implements Serializable {
         redisTemplate.opsForHash().putAll(key, elementMap);
     }
 
+    /**
+     * 分批向 map 集合插入多条数据
+     * 每批一条 HMSET 命令,所有命令在同一个管道中发送,只有一次网络往返
+     *
+     * @param key 集合 key
+     * @param elementMap 元素 map 集合
+     * @param batchSize 每批元素数量
+     */
+    public void mapPutPipelined(String key, Map<String, Object> elementMap, int batchSize) {
+        if (elementMap.isEmpty()) {
+            return;
+        }
+        executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                Map<String, Object> batchMap = new HashMap<>(batchSize * 2);
+                for (Map.Entry<String, Object> entry : elementMap.entrySet()) {
+                    batchMap.put(entry.getKey(), entry.getValue());
+                    if (batchMap.size() >= batchSize) {
+                        operations.opsForHash().putAll((K) key, batchMap);
+                        batchMap = new HashMap<>(batchSize * 2);
+                    }
+                }
+                if (!batchMap.isEmpty()) {
+                    operations.opsForHash().putAll((K) key, batchMap);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 以管道方式执行多条命令
+     *
+     * @param sessionCallback 命令回调,回调内的命令结果均为 null
+     * @return 各命令执行结果
+     */
+    public List<Object> executePipelined(SessionCallback<?> sessionCallback) {
+        return redisTemplate.executePipelined(sessionCallback);
+    }
+
+    /**
+     * 在同一连接上执行多条命令,可配合 multi/exec 使用事务
+     *
+     * @param sessionCallback 命令回调
+     * @return 回调返回值
+     */
+    public <T> T execute(SessionCallback<T> sessionCallback) {
+        return redisTemplate.execute(sessionCallback);
+    }
+
     /**
      * 从 map 集合中获取一个元素
      *
@@ -124,6 +200,46 @@ public class RedisComponent implements Serializable {
         return (V) redisTemplate.opsForHash().get(key, hashKey);
     }
 
+    /**
+     * 从 map 集合中获取多个元素(HMGET)
+     *
+     * @param key 集合 key
+     * @param hashKeys 元素 key 列表
+     * @param clazz 元素值类
+     * @return 与 hashKeys 顺序一致,不存在的元素为 null
+     */
+    @SuppressWarnings("unchecked")
+    public <V> List<V> mapMultiGet(String key, Collection<String> hashKeys, Class<V> clazz) {
+        if (hashKeys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return (List<V>) redisTemplate.opsForHash().multiGet(key, new ArrayList<>(hashKeys));
+    }
+
+    /**
+     * 游标方式(HSCAN)遍历 map 集合元素
+     * 元素按批次从 redis 读取,使用完毕后需关闭返回的 Stream
+     *
+     * @param key 集合 key
+     * @param count 每批次读取数量
+     * @param clazz 元素值类
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <V> Stream<V> mapScan(String key, long count, Class<V> clazz) {
+        Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(key,
+                ScanOptions.scanOptions().count(count).build());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+                .map(entry -> (V) entry.getValue())
+                .onClose(() -> {
+                    try {
+                        cursor.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
     /**
      * 从 map 集合中读取所有元素
      *
@@ -155,5 +271,25 @@ public class RedisComponent implements Serializable {
         redisTemplate.opsForHash().delete(key, hashKeyList.toArray());
     }
 
+    /**
+     * 发布消息
+     *
+     * @param channel 频道
+     * @param message 消息
+     */
+    public void publish(String channel, Object message) {
+        redisTemplate.convertAndSend(channel, message);
+    }
+
+    /**
+     * 反序列化消息体
+     *
+     * @param body
+     * @return
+     */
+    public Object deserialize(byte[] body) {
+        return redisTemplate.getValueSerializer().deserialize(body);
+    }
+
 
 }
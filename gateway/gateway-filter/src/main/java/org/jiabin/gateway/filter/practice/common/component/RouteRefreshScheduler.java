@@ -0,0 +1,75 @@
+package org.jiabin.gateway.filter.practice.common.component;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @Description: 路由刷新调度器
+ * 在时间窗口内合并多次刷新请求,只发布一次 RefreshRoutesEvent
+ * @author jiabin.yu
+ * @Date: 2021/10/19
+ */
+@Slf4j
+@Component
+public class RouteRefreshScheduler implements ApplicationEventPublisherAware {
+
+    /**
+     * 合并窗口,单位: 毫秒
+     */
+    @Value("${gateway.route.refresh-window-millis:200}")
+    private long refreshWindowMillis;
+
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    /**
+     * 是否已有待执行的刷新
+     */
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gateway-route-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 请求刷新路由
+     * 窗口内的后续请求合并到同一次刷新中
+     */
+    public void requestRefresh() {
+        if (pending.compareAndSet(false, true)) {
+            scheduler.schedule(this::refresh, refreshWindowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void refresh() {
+        // 先重置标记,刷新过程中到达的变更会触发下一次刷新
+        pending.set(false);
+        try {
+            applicationEventPublisher.publishEvent(new RefreshRoutesEvent(this));
+        } catch (Exception e) {
+            log.error("刷新路由失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+}
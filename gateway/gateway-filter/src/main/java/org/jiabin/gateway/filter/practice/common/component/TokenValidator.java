@@ -0,0 +1,132 @@
+package org.jiabin.gateway.filter.practice.common.component;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.jiabin.gateway.filter.practice.common.constant.CacheChangeConst;
+import org.jiabin.gateway.filter.practice.common.constant.RedisKeyConst;
+import org.jiabin.gateway.filter.practice.model.CacheChangeEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description: token 校验组件
+ * 校验结果缓存在本地(W-TinyLFU 淘汰,有容量上限),有效与无效 token 分别使用不同的过期时间;
+ * 同一 token 的并发请求共享同一次 redis 查询; token 注销时通过缓存变更通知移除所有节点的校验结果
+ * @author jiabin.yu
+ * @Date: 2022/8/23
+ */
+@Slf4j
+@Component
+public class TokenValidator implements CacheChangeHandler {
+
+    @Autowired
+    private ReactiveRedisComponent reactiveRedisComponent;
+
+    /**
+     * 缓存最大条数
+     */
+    @Value("${gateway.auth.token-cache.maximum-size:100000}")
+    private long maximumSize;
+
+    /**
+     * 有效 token 缓存时间,单位: 秒
+     */
+    @Value("${gateway.auth.token-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    /**
+     * 无效 token 缓存时间,单位: 秒
+     */
+    @Value("${gateway.auth.token-cache.negative-ttl-seconds:30}")
+    private long negativeTtlSeconds;
+
+    /**
+     * token 校验结果缓存, value: 是否有效
+     */
+    private AsyncLoadingCache<String, Boolean> tokenCache;
+
+    @PostConstruct
+    public void init() {
+        long ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        long negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+        tokenCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Boolean>() {
+                    @Override
+                    public long expireAfterCreate(String key, Boolean valid, long currentTime) {
+                        return valid ? ttlNanos : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Boolean valid, long currentTime,
+                                                  long currentDuration) {
+                        return valid ? ttlNanos : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Boolean valid, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .buildAsync((token, executor) -> reactiveRedisComponent
+                        .exists(RedisKeyConst.KEY_GATEWAY_TOKEN_PREFIX + token)
+                        .defaultIfEmpty(Boolean.FALSE)
+                        .toFuture());
+    }
+
+    /**
+     * 校验 token
+     * 查询失败时不缓存结果,按无效处理
+     *
+     * @param token
+     * @return
+     */
+    public Mono<Boolean> validate(String token) {
+        return Mono.fromFuture(tokenCache.get(token))
+                .onErrorResume(e -> {
+                    log.warn("token 校验失败: {}", e.getMessage());
+                    return Mono.just(Boolean.FALSE);
+                });
+    }
+
+    /**
+     * 移除本地缓存的 token 校验结果(如注销登录)
+     *
+     * @param token
+     */
+    public void invalidate(String token) {
+        tokenCache.synchronous().invalidate(token);
+    }
+
+    @Override
+    public String cacheType() {
+        return CacheChangeConst.TYPE_TOKEN;
+    }
+
+    /**
+     * 其他节点注销了 token
+     *
+     * @param event
+     */
+    @Override
+    public void applyChange(CacheChangeEvent event) {
+        invalidate(event.getKey());
+    }
+
+    /**
+     * 可能错过了注销通知,清空全部校验结果
+     */
+    @Override
+    public void resync() {
+        tokenCache.synchronous().invalidateAll();
+    }
+
+}
@@ -0,0 +1,188 @@
+package org.jiabin.gateway.filter.practice.common.component;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jiabin.gateway.filter.practice.common.constant.CacheChangeConst;
+import org.jiabin.gateway.filter.practice.common.constant.RedisKeyConst;
+import org.jiabin.gateway.filter.practice.common.util.WhiteListIndex;
+import org.jiabin.gateway.filter.practice.model.CacheChangeEvent;
+import org.jiabin.gateway.filter.practice.model.WhiteListEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * @Description: 网关白名单本地缓存
+ * 白名单变更时重新编译索引并整体替换,请求线程只读取 volatile 引用,无需加锁
+ * @author jiabin.yu
+ * @Date: 2022/8/23
+ */
+@Slf4j
+@Component
+public class WhiteListCache implements CacheChangeHandler {
+
+    /**
+     * 从 redis 同步白名单时每批次读取数量
+     */
+    private static final long SCAN_COUNT = 500;
+
+    @Autowired
+    private RedisComponent redisComponent;
+
+    /**
+     * 白名单条目, key: 白名单 id
+     */
+    private final Map<Long, WhiteListEntity> whiteListMap = new ConcurrentHashMap<>(16);
+
+    /**
+     * 当前生效的白名单索引
+     */
+    private volatile WhiteListIndex index = WhiteListIndex.EMPTY;
+
+    /**
+     * 按路径排序的白名单,用于管理端路径前缀查询, key: 路径
+     */
+    private volatile NavigableMap<String, List<WhiteListEntity>> pathIndex = new TreeMap<>();
+
+    /**
+     * 全量加载白名单
+     *
+     * @param whiteListList
+     */
+    public synchronized void reload(Collection<WhiteListEntity> whiteListList) {
+        whiteListMap.clear();
+        whiteListList.forEach(whiteList -> whiteListMap.put(whiteList.getId(), whiteList));
+        rebuild();
+    }
+
+    /**
+     * 新增或更新一条白名单
+     *
+     * @param whiteList
+     */
+    public synchronized void put(WhiteListEntity whiteList) {
+        whiteListMap.put(whiteList.getId(), whiteList);
+        rebuild();
+    }
+
+    /**
+     * 批量新增或更新白名单,只重建一次索引
+     *
+     * @param whiteListList
+     */
+    public synchronized void putAll(Collection<WhiteListEntity> whiteListList) {
+        whiteListList.forEach(whiteList -> whiteListMap.put(whiteList.getId(), whiteList));
+        rebuild();
+    }
+
+    /**
+     * 删除一条白名单
+     *
+     * @param id
+     */
+    public synchronized void remove(Long id) {
+        if (whiteListMap.remove(id) != null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 判断请求路径是否命中白名单
+     *
+     * @param requestPath
+     * @return
+     */
+    public boolean matches(String requestPath) {
+        return index.matches(requestPath);
+    }
+
+    /**
+     * 按路径前缀查询白名单
+     * 按路径字典序(路径相同时按 id 升序)遍历前缀范围,取满 limit 条即停止,不会收集全部匹配项;
+     * 游标为上一页最后一条记录的 (路径, id),从该位置之后继续查询,与该记录是否仍存在无关
+     *
+     * @param pathPrefix 路径前缀
+     * @param cursorPath 游标路径,查询第一页时为 null
+     * @param cursorId 游标 id,查询第一页时为 null
+     * @param filter 其他过滤条件
+     * @param limit 最多返回条数
+     * @return
+     */
+    public List<WhiteListEntity> searchByPathPrefix(String pathPrefix, String cursorPath, Long cursorId,
+                                                    Predicate<WhiteListEntity> filter, int limit) {
+        NavigableMap<String, List<WhiteListEntity>> range = pathIndex.subMap(pathPrefix, true,
+                pathPrefix + Character.MAX_VALUE, false);
+        if (cursorPath != null) {
+            if (cursorPath.startsWith(pathPrefix)) {
+                range = range.tailMap(cursorPath, true);
+            } else if (cursorPath.compareTo(pathPrefix) > 0) {
+                // 游标位于前缀范围之后,没有后续数据
+                return new ArrayList<>(0);
+            }
+        }
+        List<WhiteListEntity> whiteListList = new ArrayList<>(limit);
+        for (Map.Entry<String, List<WhiteListEntity>> entry : range.entrySet()) {
+            boolean atCursorPath = cursorId != null && entry.getKey().equals(cursorPath);
+            for (WhiteListEntity whiteList : entry.getValue()) {
+                if (atCursorPath && whiteList.getId() <= cursorId) {
+                    continue;
+                }
+                if (filter.test(whiteList)) {
+                    whiteListList.add(whiteList);
+                    if (whiteListList.size() >= limit) {
+                        return whiteListList;
+                    }
+                }
+            }
+        }
+        return whiteListList;
+    }
+
+    @Override
+    public String cacheType() {
+        return CacheChangeConst.TYPE_WHITE_LIST;
+    }
+
+    @Override
+    public void applyChange(CacheChangeEvent event) {
+        if (CacheChangeConst.OPERATION_REMOVE.equals(event.getOperation())) {
+            remove(Long.valueOf(event.getKey()));
+        } else {
+            put((WhiteListEntity) event.getValue());
+        }
+    }
+
+    @Override
+    public void resync() {
+        // 使用 HSCAN 分批读取,避免大 hash 的 HGETALL 长时间阻塞 redis
+        try (Stream<WhiteListEntity> whiteListStream = redisComponent.mapScan(RedisKeyConst.KEY_GATEWAY_WHITE_LIST,
+                SCAN_COUNT, WhiteListEntity.class)) {
+            reload(whiteListStream.collect(Collectors.toList()));
+        }
+    }
+
+    private void rebuild() {
+        List<WhiteListEntity> whiteListList = new ArrayList<>(whiteListMap.values());
+        index = WhiteListIndex.compile(whiteListList);
+        NavigableMap<String, List<WhiteListEntity>> newPathIndex = new TreeMap<>();
+        for (WhiteListEntity whiteList : whiteListList) {
+            if (whiteList.getPath() != null) {
+                newPathIndex.computeIfAbsent(whiteList.getPath(), k -> new ArrayList<>(1)).add(whiteList);
+            }
+        }
+        newPathIndex.values().forEach(pathList -> pathList.sort(Comparator.comparing(WhiteListEntity::getId)));
+        pathIndex = newPathIndex;
+        log.info("网关路由白名单索引已重建,条数: {}", index.size());
+    }
+
+}
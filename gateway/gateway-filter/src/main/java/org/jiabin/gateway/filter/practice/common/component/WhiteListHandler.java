@@ -1,15 +1,16 @@
 package org.jiabin.gateway.filter.practice.common.component;
 
-import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import org.jiabin.gateway.filter.practice.common.constant.CacheChangeConst;
 import org.jiabin.gateway.filter.practice.common.constant.RedisKeyConst;
-import org.jiabin.gateway.filter.practice.dao.WhiteListMapper;
 import org.jiabin.gateway.filter.practice.model.WhiteListEntity;
+import org.jiabin.gateway.filter.practice.service.WhiteListService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,19 +24,47 @@ import java.util.Map;
 @Component
 public class WhiteListHandler implements ApplicationRunner {
 
+    /**
+     * 分批加载白名单时每批数量
+     */
+    private static final int BATCH_SIZE = 500;
+
     @Autowired
-    private WhiteListMapper whiteListMapper;
+    private WhiteListService whiteListService;
     @Autowired
     private RedisComponent redisComponent;
+    @Autowired
+    private WhiteListCache whiteListCache;
+    @Autowired
+    private CacheChangePublisher cacheChangePublisher;
+    @Autowired
+    private CacheChangeListener cacheChangeListener;
 
 
     @Override
     public void run(ApplicationArguments args) throws Exception {
         // 将所有白名单加载到缓存中
         log.info("-------------加载网关路由白名单------------------");
-        List<WhiteListEntity> whiteListList = whiteListMapper.selectList(Wrappers.emptyWrapper());
-        Map<String, Object> whiteListMap = new HashMap<>(16);
-        whiteListList.forEach(whiteList -> whiteListMap.put(whiteList.getId().toString(), whiteList));
-        redisComponent.mapPutBatch(RedisKeyConst.KEY_GATEWAY_WHITE_LIST, whiteListMap);
+        // 先读取版本号,加载期间发生的变更会通过变更通知再次应用
+        long version = cacheChangePublisher.currentVersion(CacheChangeConst.TYPE_WHITE_LIST);
+        // 按 id 游标分批查询数据库,每批查询后直接写入 redis,不再额外持有全表的 redis 写入数据
+        // 本地索引需要全部白名单才能匹配请求,因此只在本地缓存中保留全量数据
+        List<WhiteListEntity> whiteListList = new ArrayList<>();
+        Long lastId = null;
+        List<WhiteListEntity> batchList;
+        do {
+            batchList = whiteListService.listAfter(lastId, BATCH_SIZE);
+            if (batchList.isEmpty()) {
+                break;
+            }
+            Map<String, Object> whiteListMap = new HashMap<>(batchList.size() * 2);
+            batchList.forEach(whiteList -> whiteListMap.put(whiteList.getId().toString(), whiteList));
+            redisComponent.mapPutPipelined(RedisKeyConst.KEY_GATEWAY_WHITE_LIST, whiteListMap, BATCH_SIZE);
+            whiteListList.addAll(batchList);
+            lastId = batchList.get(batchList.size() - 1).getId();
+        } while (batchList.size() == BATCH_SIZE);
+        log.info("网关路由白名单加载完成,条数: {}", whiteListList.size());
+        whiteListCache.reload(whiteListList);
+        cacheChangeListener.markSynced(CacheChangeConst.TYPE_WHITE_LIST, version);
     }
 }
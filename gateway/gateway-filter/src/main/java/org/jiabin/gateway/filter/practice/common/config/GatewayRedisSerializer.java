@@ -0,0 +1,107 @@
+package org.jiabin.gateway.filter.practice.common.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.jiabin.gateway.filter.practice.model.CachedResponse;
+import org.jiabin.gateway.filter.practice.model.WhiteListEntity;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Description: 网关 redis 值序列化器
+ * 白名单与路由等高频类型使用 Smile 二进制格式,不写入类名,体积更小、解析更快;
+ * 其他类型以及历史数据仍使用带类型信息的 JSON 格式,读取时根据首字节自动识别两种格式
+ * 二进制格式: [0x00 标记][1 字节类型编码][Smile 数据]
+ * @author jiabin.yu
+ * @Date: 2018/10/29
+ */
+public class GatewayRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * 二进制格式标记,JSON 文本不会以该字节开头
+     */
+    private static final byte BINARY_MARKER = 0x00;
+
+    /**
+     * 二进制格式类型编码,只能新增不能修改已有编码
+     */
+    private static final Class<?>[] BINARY_TYPES = {null, WhiteListEntity.class, RouteDefinition.class,
+            CachedResponse.class};
+
+    private static final Map<Class<?>, Byte> BINARY_TYPE_CODES = new HashMap<>(8);
+
+    static {
+        for (byte code = 1; code < BINARY_TYPES.length; code++) {
+            BINARY_TYPE_CODES.put(BINARY_TYPES[code], code);
+        }
+    }
+
+    /**
+     * 带类型信息的 JSON 序列化器(历史格式)
+     */
+    private final RedisSerializer<Object> jsonSerializer;
+
+    /**
+     * Smile 二进制 ObjectMapper
+     */
+    private final ObjectMapper smileMapper;
+
+    /**
+     * 是否以二进制格式写入
+     */
+    private final boolean writeBinary;
+
+    public GatewayRedisSerializer(RedisSerializer<Object> jsonSerializer, boolean writeBinary) {
+        this.jsonSerializer = jsonSerializer;
+        this.writeBinary = writeBinary;
+        this.smileMapper = new ObjectMapper(new SmileFactory());
+        this.smileMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        Byte code = writeBinary ? BINARY_TYPE_CODES.get(value.getClass()) : null;
+        if (code == null) {
+            return jsonSerializer.serialize(value);
+        }
+        try {
+            byte[] data = smileMapper.writeValueAsBytes(value);
+            byte[] bytes = new byte[data.length + 2];
+            bytes[0] = BINARY_MARKER;
+            bytes[1] = code;
+            System.arraycopy(data, 0, bytes, 2, data.length);
+            return bytes;
+        } catch (IOException e) {
+            throw new SerializationException("Could not write Smile: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != BINARY_MARKER) {
+            return jsonSerializer.deserialize(bytes);
+        }
+        int code = bytes.length < 2 ? 0 : bytes[1];
+        if (code <= 0 || code >= BINARY_TYPES.length) {
+            throw new SerializationException("Unknown binary type code: " + code);
+        }
+        try {
+            return smileMapper.readValue(bytes, 2, bytes.length - 2, BINARY_TYPES[code]);
+        } catch (IOException e) {
+            throw new SerializationException("Could not read Smile: " + e.getMessage(), e);
+        }
+    }
+
+}
@@ -4,14 +4,24 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import org.jiabin.gateway.filter.practice.common.component.CacheChangeListener;
+import org.jiabin.gateway.filter.practice.common.constant.RedisKeyConst;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.io.Serializable;
+import java.util.concurrent.Executors;
 
 /**
  * @Description: redis 配置
@@ -21,6 +31,13 @@ import java.io.Serializable;
 @Configuration
 public class RedisConfig {
 
+    /**
+     * 值序列化格式, json: 带类型信息的 JSON; smile: 白名单与路由使用 Smile 二进制格式
+     * 两种格式均可读取,集群内所有节点升级到支持 smile 的版本后再切换写入格式
+     */
+    @Value("${gateway.redis.serializer:json}")
+    private String serializerType;
+
     /**
      * redisTemplate 序列化默认使用的jdk Serializable, 存储二进制字节码, 所以自定义序列化类
      * @param redisConnectionFactory
@@ -30,19 +47,66 @@ public class RedisConfig {
     public RedisTemplate<Serializable, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory) {
         RedisTemplate<Serializable, Object> redisTemplate = new RedisTemplate<>();
         redisTemplate.setConnectionFactory(redisConnectionFactory);
-        // 使用Jackson2JsonRedisSerialize替换默认序列化
-        Jackson2JsonRedisSerializer jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer(Object.class);
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        objectMapper.activateDefaultTyping(new LaissezFaireSubTypeValidator(),
-                ObjectMapper.DefaultTyping.EVERYTHING);
-        jackson2JsonRedisSerializer.setObjectMapper(objectMapper);
+        // 使用自定义序列化替换默认序列化
+        RedisSerializer<Object> valueSerializer = valueSerializer();
         // 设置value的序列化规则和key的序列化规则
         redisTemplate.setKeySerializer(new StringRedisSerializer());
         redisTemplate.setHashKeySerializer(new StringRedisSerializer());
-        redisTemplate.setValueSerializer(jackson2JsonRedisSerializer);
-        redisTemplate.setHashValueSerializer(jackson2JsonRedisSerializer);
+        redisTemplate.setValueSerializer(valueSerializer);
+        redisTemplate.setHashValueSerializer(valueSerializer);
         redisTemplate.afterPropertiesSet();
         return redisTemplate;
     }
-}
\ No newline at end of file
+
+    /**
+     * 响应式 redisTemplate, 供网关过滤器等运行在事件循环线程上的组件使用, 序列化规则与 redisTemplate 保持一致
+     *
+     * @param reactiveRedisConnectionFactory
+     * @return
+     */
+    @Bean
+    public ReactiveRedisTemplate<String, Object> reactiveRedisTemplate(
+            ReactiveRedisConnectionFactory reactiveRedisConnectionFactory) {
+        RedisSerializer<Object> valueSerializer = valueSerializer();
+        RedisSerializationContext<String, Object> serializationContext = RedisSerializationContext
+                .<String, Object>newSerializationContext(new StringRedisSerializer())
+                .value(valueSerializer)
+                .hashValue(valueSerializer)
+                .build();
+        return new ReactiveRedisTemplate<>(reactiveRedisConnectionFactory, serializationContext);
+    }
+
+    /**
+     * 网关缓存变更通知监听容器
+     * 使用单线程处理消息,保证变更按发布顺序应用
+     *
+     * @param redisConnectionFactory
+     * @param cacheChangeListener
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                       CacheChangeListener cacheChangeListener) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.setTaskExecutor(Executors.newSingleThreadExecutor(runnable ->
+                new Thread(runnable, "gateway-cache-change")));
+        container.addMessageListener(cacheChangeListener,
+                new ChannelTopic(RedisKeyConst.CHANNEL_GATEWAY_CACHE_CHANGE));
+        return container;
+    }
+
+    private RedisSerializer<Object> valueSerializer() {
+        return new GatewayRedisSerializer(jackson2JsonRedisSerializer(), "smile".equalsIgnoreCase(serializerType));
+    }
+
+    static Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer() {
+        Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer = new Jackson2JsonRedisSerializer<>(Object.class);
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        objectMapper.activateDefaultTyping(new LaissezFaireSubTypeValidator(),
+                ObjectMapper.DefaultTyping.EVERYTHING);
+        jackson2JsonRedisSerializer.setObjectMapper(objectMapper);
+        return jackson2JsonRedisSerializer;
+    }
+}
@@ -0,0 +1,179 @@
+package org.jiabin.gateway.filter.practice.common.config;
+
+import org.jiabin.gateway.filter.practice.repository.IncrementalRouteLocator;
+import org.jiabin.gateway.filter.practice.repository.IndexedRoutePredicateHandlerMapping;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.filter.factory.GatewayFilterFactory;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.handler.predicate.RoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.route.RouteDefinitionRouteLocator;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import reactor.core.publisher.Flux;
+import reactor.util.context.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * @Description: 路由定位器配置
+ * @author jiabin.yu
+ * @Date: 2021/10/19
+ */
+@Configuration
+public class RouteLocatorConfig {
+
+    @Autowired
+    private ObjectProvider<RoutePredicateHandlerMapping> routePredicateHandlerMappingProvider;
+
+    /**
+     * 将网关默认的 RouteDefinitionRouteLocator 替换为增量路由定位器
+     * 默认实现每次刷新都会重新构建全部路由的断言与过滤器
+     *
+     * @return
+     */
+    @Bean
+    public static BeanPostProcessor incrementalRouteLocatorPostProcessor() {
+        return new IncrementalRouteLocatorPostProcessor();
+    }
+
+    static class IncrementalRouteLocatorPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+        private ListableBeanFactory beanFactory;
+
+        @Override
+        public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+            this.beanFactory = (ListableBeanFactory) beanFactory;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            if (!(bean instanceof RouteDefinitionRouteLocator)) {
+                return bean;
+            }
+            // 依赖在首次获取路由时再查找,避免在 BeanPostProcessor 中提前初始化
+            return new IncrementalRouteLocator(() -> beanFactory.getBean(RouteDefinitionLocator.class),
+                    new SingleRouteConverterSupplier(beanFactory));
+        }
+    }
+
+    /**
+     * 单条路由构建方法,只创建一个 RouteDefinitionRouteLocator 并在所有路由间复用
+     * 待构建的路由定义通过 subscriberContext 传入,避免每条路由都重新加载断言与过滤器工厂
+     */
+    static class SingleRouteConverterSupplier implements Supplier<Function<RouteDefinition, Flux<Route>>> {
+
+        private final ListableBeanFactory beanFactory;
+
+        private volatile Function<RouteDefinition, Flux<Route>> routeConverter;
+
+        SingleRouteConverterSupplier(ListableBeanFactory beanFactory) {
+            this.beanFactory = beanFactory;
+        }
+
+        @Override
+        public Function<RouteDefinition, Flux<Route>> get() {
+            Function<RouteDefinition, Flux<Route>> current = routeConverter;
+            if (current == null) {
+                synchronized (this) {
+                    current = routeConverter;
+                    if (current == null) {
+                        current = createRouteConverter();
+                        routeConverter = current;
+                    }
+                }
+            }
+            return current;
+        }
+
+        private Function<RouteDefinition, Flux<Route>> createRouteConverter() {
+            List<RoutePredicateFactory> predicates = new ArrayList<>(
+                    beanFactory.getBeansOfType(RoutePredicateFactory.class).values());
+            List<GatewayFilterFactory> gatewayFilterFactories = new ArrayList<>(
+                    beanFactory.getBeansOfType(GatewayFilterFactory.class).values());
+            GatewayProperties gatewayProperties = beanFactory.getBean(GatewayProperties.class);
+            ConfigurationService configurationService = beanFactory.getBean(ConfigurationService.class);
+            RouteDefinitionRouteLocator routeDefinitionRouteLocator = new RouteDefinitionRouteLocator(
+                    () -> Flux.deferWithContext(context -> Flux.just(context.get(RouteDefinition.class))),
+                    predicates, gatewayFilterFactories, gatewayProperties, configurationService);
+            return routeDefinition -> routeDefinitionRouteLocator.getRoutes()
+                    .subscriberContext(Context.of(RouteDefinition.class, routeDefinition));
+        }
+    }
+
+    /**
+     * 将网关默认的 RoutePredicateHandlerMapping 替换为基于索引的路由匹配
+     * 可通过 gateway.route.index-enabled=false 关闭
+     *
+     * @return
+     */
+    @Bean
+    public static BeanPostProcessor indexedRoutePredicateHandlerMappingPostProcessor() {
+        return new IndexedRoutePredicateHandlerMappingPostProcessor();
+    }
+
+    /**
+     * 路由刷新完成后使路由匹配索引失效
+     * 替换后的 bean 定义类型仍是 RoutePredicateHandlerMapping,不会被自动注册为监听器,由这里转发
+     *
+     * @param event
+     */
+    @EventListener
+    public void onRefreshRoutesResult(RefreshRoutesResultEvent event) {
+        routePredicateHandlerMappingProvider.ifAvailable(handlerMapping -> {
+            if (handlerMapping instanceof IndexedRoutePredicateHandlerMapping) {
+                ((IndexedRoutePredicateHandlerMapping) handlerMapping).invalidate();
+            }
+        });
+    }
+
+    static class IndexedRoutePredicateHandlerMappingPostProcessor implements BeanPostProcessor, ApplicationContextAware {
+
+        private ApplicationContext applicationContext;
+
+        @Override
+        public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+            this.applicationContext = applicationContext;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            if (!(bean instanceof RoutePredicateHandlerMapping) || bean instanceof IndexedRoutePredicateHandlerMapping) {
+                return bean;
+            }
+            Environment environment = applicationContext.getEnvironment();
+            if (!environment.getProperty("gateway.route.index-enabled", Boolean.class, Boolean.TRUE)) {
+                return bean;
+            }
+            IndexedRoutePredicateHandlerMapping handlerMapping = new IndexedRoutePredicateHandlerMapping(
+                    applicationContext.getBean(FilteringWebHandler.class),
+                    applicationContext.getBean(RouteLocator.class),
+                    applicationContext.getBean(GlobalCorsProperties.class), environment,
+                    () -> applicationContext.getBeanProvider(IncrementalRouteLocator.class).getIfAvailable());
+            handlerMapping.setApplicationContext(applicationContext);
+            return handlerMapping;
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package org.jiabin.gateway.filter.practice.common.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @Description: WebFlux 配置
+ * 为 Jackson 编解码器注册 NDJSON(application/x-ndjson)类型,用于批量导入导出时逐行流式读写
+ * @author jiabin.yu
+ * @Date: 2022/8/23
+ */
+@Configuration
+public class WebFluxConfig implements WebFluxConfigurer {
+
+    /**
+     * NDJSON, 每行一个 json 对象
+     */
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+
+    /**
+     * 逐条输出的响应类型
+     */
+    private static final List<MediaType> STREAMING_MEDIA_TYPES = Arrays.asList(APPLICATION_NDJSON,
+            MediaType.APPLICATION_STREAM_JSON, MediaType.TEXT_EVENT_STREAM);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        MimeType[] mimeTypes = {MediaType.APPLICATION_JSON, new MediaType("application", "*+json"),
+                APPLICATION_NDJSON};
+        configurer.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper, mimeTypes));
+        Jackson2JsonEncoder encoder = new Jackson2JsonEncoder(objectMapper, mimeTypes);
+        encoder.setStreamingMediaTypes(Arrays.asList(MediaType.APPLICATION_STREAM_JSON, APPLICATION_NDJSON));
+        configurer.defaultCodecs().jackson2JsonEncoder(encoder);
+    }
+
+    /**
+     * 请求是否要求逐条输出
+     * 按 Accept 的优先级判断,只有明确要求 NDJSON 或 SSE 时才逐条输出,其余(包括未指定或任意类型)按 json 返回
+     *
+     * @param request
+     * @return
+     */
+    public static boolean isStreamingRequest(ServerHttpRequest request) {
+        List<MediaType> acceptList = new ArrayList<>(request.getHeaders().getAccept());
+        MediaType.sortBySpecificityAndQuality(acceptList);
+        for (MediaType accept : acceptList) {
+            if (STREAMING_MEDIA_TYPES.stream().anyMatch(accept::equalsTypeAndSubtype)) {
+                return true;
+            }
+            if (accept.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+}
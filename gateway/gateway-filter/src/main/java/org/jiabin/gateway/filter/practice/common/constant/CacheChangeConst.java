@@ -0,0 +1,43 @@
+package org.jiabin.gateway.filter.practice.common.constant;
+
+/**
+ * @Description: 网关缓存变更常量类
+ * @author jiabin.yu
+ * @Date: 2022/8/25
+ */
+public class CacheChangeConst {
+
+    private CacheChangeConst() {
+    }
+
+    /**
+     * 缓存类型-网关路由白名单
+     */
+    public static final String TYPE_WHITE_LIST = "WHITE_LIST";
+
+    /**
+     * 缓存类型-网关路由
+     */
+    public static final String TYPE_ROUTE = "ROUTE";
+
+    /**
+     * 缓存类型-token 校验结果
+     */
+    public static final String TYPE_TOKEN = "TOKEN";
+
+    /**
+     * 操作类型-新增或更新
+     */
+    public static final String OPERATION_PUT = "PUT";
+
+    /**
+     * 操作类型-删除
+     */
+    public static final String OPERATION_REMOVE = "REMOVE";
+
+    /**
+     * 操作类型-批量变更,接收方从 Redis 全量重新同步
+     */
+    public static final String OPERATION_RELOAD = "RELOAD";
+
+}
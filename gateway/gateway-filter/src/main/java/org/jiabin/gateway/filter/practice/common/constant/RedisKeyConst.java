@@ -18,4 +18,29 @@ public class RedisKeyConst {
      */
     public static final String KEY_GATEWAY_ROUTE = "REDIS_KEY_GATEWAY_ROUTE";
 
+    /**
+     * 网关登录 token 前缀, key 存在即 token 有效, value 为登录主体, 由 TokenService 签发与注销
+     */
+    public static final String KEY_GATEWAY_TOKEN_PREFIX = "REDIS_KEY_GATEWAY_TOKEN:";
+
+    /**
+     * 网关响应缓存前缀
+     */
+    public static final String KEY_GATEWAY_RESPONSE_CACHE_PREFIX = "REDIS_KEY_GATEWAY_RESPONSE_CACHE:";
+
+    /**
+     * 网关限流令牌桶前缀
+     */
+    public static final String KEY_GATEWAY_RATE_LIMIT_PREFIX = "REDIS_KEY_GATEWAY_RATE_LIMIT:";
+
+    /**
+     * 网关缓存变更版本号前缀
+     */
+    public static final String KEY_GATEWAY_CACHE_VERSION_PREFIX = "REDIS_KEY_GATEWAY_CACHE_VERSION:";
+
+    /**
+     * 网关缓存变更通知频道
+     */
+    public static final String CHANNEL_GATEWAY_CACHE_CHANGE = "REDIS_CHANNEL_GATEWAY_CACHE_CHANGE";
+
 }
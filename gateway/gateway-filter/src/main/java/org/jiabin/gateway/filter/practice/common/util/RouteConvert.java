@@ -1,6 +1,6 @@
 package org.jiabin.gateway.filter.practice.common.util;
 
-import cn.hutool.json.JSONArray;
+import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 import org.jiabin.gateway.filter.practice.model.RouteEntity;
 import org.springframework.cloud.gateway.filter.FilterDefinition;
@@ -8,7 +8,15 @@ import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
 import org.springframework.cloud.gateway.route.RouteDefinition;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @Description: 路由器转换工具类
@@ -17,32 +25,151 @@ import java.util.Map;
  */
 public class RouteConvert {
 
+    /**
+     * 已转换的路由定义, key: 路由 id
+     * 数据库记录更新时间未变化时直接复用解析结果; 缓存实例不对外暴露,每次返回副本,
+     * 调用方修改返回值不会影响缓存,路由定位器按 equals 判断路由未变化
+     */
+    private static final Map<String, CachedDefinition> DEFINITION_CACHE = new ConcurrentHashMap<>(16);
+
     private RouteConvert(){
     }
 
+    /**
+     * 批量转换为 RouteDefinition,并清理已不存在路由的缓存
+     *
+     * @param routeEntityList
+     * @return
+     */
+    public static List<RouteDefinition> toRouteDefinitions(Collection<RouteEntity> routeEntityList) {
+        List<RouteDefinition> routeDefinitionList = new ArrayList<>(routeEntityList.size());
+        Set<String> routeIdSet = new HashSet<>(routeEntityList.size() * 2);
+        for (RouteEntity routeEntity : routeEntityList) {
+            routeDefinitionList.add(toRouteDefinition(routeEntity));
+            routeIdSet.add(routeEntity.getRouteId());
+        }
+        DEFINITION_CACHE.keySet().retainAll(routeIdSet);
+        return routeDefinitionList;
+    }
+
     /**
      * 转换为 RouteDefinition
+     * 以 (routeId, updateDate) 为缓存 key,更新时间为空的记录不缓存; 命中缓存时返回缓存定义的副本
      *
      * @param routeEntity
      * @return
      */
     public static RouteDefinition toRouteDefinition(RouteEntity routeEntity) {
+        Long updateDate = routeEntity.getUpdateDate();
+        if (updateDate == null) {
+            return convert(routeEntity);
+        }
+        CachedDefinition cached = DEFINITION_CACHE.get(routeEntity.getRouteId());
+        if (cached != null && Objects.equals(cached.updateDate, updateDate)) {
+            return copy(cached.routeDefinition);
+        }
+        RouteDefinition routeDefinition = convert(routeEntity);
+        DEFINITION_CACHE.put(routeEntity.getRouteId(), new CachedDefinition(updateDate, routeDefinition));
+        return copy(routeDefinition);
+    }
+
+    /**
+     * 移除路由定义缓存
+     *
+     * @param routeId
+     */
+    public static void evict(String routeId) {
+        DEFINITION_CACHE.remove(routeId);
+    }
+
+    /**
+     * 解析数据库记录,每个 json 字段只解析一次
+     *
+     * @param routeEntity
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static RouteDefinition convert(RouteEntity routeEntity) {
         RouteDefinition routeDefinition = new RouteDefinition();
         routeDefinition.setId(routeEntity.getRouteId());
         routeDefinition.setOrder(routeEntity.getFilterOrder());
         routeDefinition.setUri(URI.create(routeEntity.getUri()));
-        JSONArray predicateArray = new JSONArray(JSONUtil.toJsonStr(routeEntity.getPredicates()));
-        if (!predicateArray.isEmpty()) {
-            routeDefinition.setPredicates(predicateArray.toList(PredicateDefinition.class));
+        if (StrUtil.isNotBlank(routeEntity.getPredicates())) {
+            List<PredicateDefinition> predicateList = JSONUtil.toList(routeEntity.getPredicates(),
+                    PredicateDefinition.class);
+            if (!predicateList.isEmpty()) {
+                routeDefinition.setPredicates(predicateList);
+            }
         }
-        JSONArray filtersArray = new JSONArray(JSONUtil.toJsonStr(routeEntity.getFilters()));
-        if (!filtersArray.isEmpty()) {
-            routeDefinition.setFilters(filtersArray.toList(FilterDefinition.class));
+        if (StrUtil.isNotBlank(routeEntity.getFilters())) {
+            List<FilterDefinition> filterList = JSONUtil.toList(routeEntity.getFilters(), FilterDefinition.class);
+            if (!filterList.isEmpty()) {
+                routeDefinition.setFilters(filterList);
+            }
         }
         routeDefinition.setMetadata(JSONUtil.toBean(routeEntity.getMetadata(), Map.class));
         return routeDefinition;
     }
 
+    /**
+     * 复制路由定义,断言、过滤器参数与元数据均复制为新的集合
+     *
+     * @param source
+     * @return
+     */
+    private static RouteDefinition copy(RouteDefinition source) {
+        RouteDefinition routeDefinition = new RouteDefinition();
+        routeDefinition.setId(source.getId());
+        routeDefinition.setUri(source.getUri());
+        routeDefinition.setOrder(source.getOrder());
+        List<PredicateDefinition> predicateList = new ArrayList<>(source.getPredicates().size());
+        for (PredicateDefinition predicate : source.getPredicates()) {
+            PredicateDefinition predicateCopy = new PredicateDefinition();
+            predicateCopy.setName(predicate.getName());
+            predicateCopy.setArgs(new LinkedHashMap<>(predicate.getArgs()));
+            predicateList.add(predicateCopy);
+        }
+        routeDefinition.setPredicates(predicateList);
+        List<FilterDefinition> filterList = new ArrayList<>(source.getFilters().size());
+        for (FilterDefinition filter : source.getFilters()) {
+            FilterDefinition filterCopy = new FilterDefinition();
+            filterCopy.setName(filter.getName());
+            filterCopy.setArgs(new LinkedHashMap<>(filter.getArgs()));
+            filterList.add(filterCopy);
+        }
+        routeDefinition.setFilters(filterList);
+        if (source.getMetadata() != null) {
+            routeDefinition.setMetadata(copyMap(source.getMetadata()));
+        }
+        return routeDefinition;
+    }
+
+    /**
+     * 递归复制元数据,嵌套的 Map、List 同样复制
+     *
+     * @param source
+     * @return
+     */
+    private static Map<String, Object> copyMap(Map<?, ?> source) {
+        Map<String, Object> map = new LinkedHashMap<>(source.size() * 2);
+        source.forEach((key, value) -> map.put(String.valueOf(key), copyValue(value)));
+        return map;
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof Map) {
+            return copyMap((Map<?, ?>) value);
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                list.add(copyValue(element));
+            }
+            return list;
+        }
+        return value;
+    }
+
     /**
      * 转换为路由数据库实体类
      *
@@ -60,5 +187,19 @@ public class RouteConvert {
         return routeEntity;
     }
 
+    /**
+     * 路由定义缓存项
+     */
+    private static final class CachedDefinition {
+
+        private final Long updateDate;
+
+        private final RouteDefinition routeDefinition;
+
+        private CachedDefinition(Long updateDate, RouteDefinition routeDefinition) {
+            this.updateDate = updateDate;
+            this.routeDefinition = routeDefinition;
+        }
+    }
 
 }
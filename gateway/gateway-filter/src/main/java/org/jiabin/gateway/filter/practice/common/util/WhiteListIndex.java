@@ -0,0 +1,272 @@
+package org.jiabin.gateway.filter.practice.common.util;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.jiabin.gateway.filter.practice.model.WhiteListEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * @Description: 编译后的网关白名单索引(不可变)
+ * 保持与原实现一致的匹配语义: requestPath.contains(path) || requestPath.matches(path)
+ * contains 部分使用 Aho-Corasick 自动机(字典树 + 失败指针),一次扫描请求路径即可判断是否包含任意白名单路径;
+ * matches 部分将含正则元字符的路径预编译并合并为一个正则,避免每次请求重新编译;
+ * 合并后语义可能改变的正则(反向引用、命名分组、内联标志、\Q 引用)以及合并失败时的全部正则单独匹配
+ * @author jiabin.yu
+ * @Date: 2022/8/23
+ */
+@Slf4j
+public final class WhiteListIndex {
+
+    /**
+     * 正则元字符
+     */
+    private static final String REGEX_META_CHARS = "\\^$.|?*+()[]{}";
+
+    /**
+     * 空索引
+     */
+    public static final WhiteListIndex EMPTY = compile(new ArrayList<>());
+
+    /**
+     * 节点子节点字符(有序)
+     */
+    private final char[][] childKeys;
+    /**
+     * 节点子节点下标,与 childKeys 一一对应
+     */
+    private final int[][] childNodes;
+    /**
+     * 失败指针
+     */
+    private final int[] fail;
+    /**
+     * 节点(或其失败链)是否为某个白名单路径的结尾
+     */
+    private final boolean[] output;
+    /**
+     * 合并后的正则
+     */
+    private final Pattern combinedPattern;
+    /**
+     * 无法合并的正则,单独匹配
+     */
+    private final Pattern[] standalonePatterns;
+    /**
+     * 白名单条数
+     */
+    private final int size;
+
+    private WhiteListIndex(char[][] childKeys, int[][] childNodes, int[] fail, boolean[] output,
+                           Pattern combinedPattern, Pattern[] standalonePatterns, int size) {
+        this.childKeys = childKeys;
+        this.childNodes = childNodes;
+        this.fail = fail;
+        this.output = output;
+        this.combinedPattern = combinedPattern;
+        this.standalonePatterns = standalonePatterns;
+        this.size = size;
+    }
+
+    /**
+     * 编译白名单
+     *
+     * @param whiteListList
+     * @return
+     */
+    public static WhiteListIndex compile(Collection<WhiteListEntity> whiteListList) {
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminal.add(Boolean.FALSE);
+        List<Pattern> combinableList = new ArrayList<>();
+        List<Pattern> standaloneList = new ArrayList<>();
+        int size = 0;
+        for (WhiteListEntity whiteList : whiteListList) {
+            String path = whiteList.getPath();
+            if (path == null) {
+                continue;
+            }
+            size++;
+            // 字面量路径插入字典树
+            int node = 0;
+            for (int i = 0; i < path.length(); i++) {
+                Integer next = trie.get(node).get(path.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    terminal.add(Boolean.FALSE);
+                    trie.get(node).put(path.charAt(i), next);
+                }
+                node = next;
+            }
+            terminal.set(node, Boolean.TRUE);
+            // 含正则元字符的路径额外编译为正则
+            if (!StrUtil.containsAny(path, REGEX_META_CHARS.toCharArray())) {
+                continue;
+            }
+            try {
+                Pattern pattern = Pattern.compile(path);
+                if (isCombinable(path)) {
+                    combinableList.add(pattern);
+                } else {
+                    standaloneList.add(pattern);
+                }
+            } catch (PatternSyntaxException e) {
+                log.warn("白名单路径不是合法正则,仅按包含关系匹配: {}", path);
+            }
+        }
+        int nodeCount = trie.size();
+        char[][] childKeys = new char[nodeCount][];
+        int[][] childNodes = new int[nodeCount][];
+        for (int i = 0; i < nodeCount; i++) {
+            Map<Character, Integer> children = trie.get(i);
+            childKeys[i] = new char[children.size()];
+            childNodes[i] = new int[children.size()];
+            int j = 0;
+            for (Map.Entry<Character, Integer> entry : children.entrySet()) {
+                childKeys[i][j] = entry.getKey();
+                childNodes[i][j] = entry.getValue();
+                j++;
+            }
+        }
+        // 广度优先构建失败指针
+        int[] fail = new int[nodeCount];
+        boolean[] output = new boolean[nodeCount];
+        output[0] = terminal.get(0);
+        LinkedList<Integer> queue = new LinkedList<>();
+        for (int child : childNodes[0]) {
+            fail[child] = 0;
+            output[child] = terminal.get(child) || output[0];
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int j = 0; j < childKeys[node].length; j++) {
+                int child = childNodes[node][j];
+                int state = fail[node];
+                int target = transition(childKeys, childNodes, state, childKeys[node][j]);
+                while (target < 0 && state != 0) {
+                    state = fail[state];
+                    target = transition(childKeys, childNodes, state, childKeys[node][j]);
+                }
+                fail[child] = target < 0 ? 0 : target;
+                output[child] = terminal.get(child) || output[fail[child]];
+                queue.add(child);
+            }
+        }
+        Pattern combinedPattern = combine(combinableList);
+        if (combinedPattern == null) {
+            standaloneList.addAll(combinableList);
+        }
+        return new WhiteListIndex(childKeys, childNodes, fail, output, combinedPattern,
+                standaloneList.toArray(new Pattern[0]), size);
+    }
+
+    /**
+     * 判断请求路径是否命中白名单
+     *
+     * @param requestPath
+     * @return
+     */
+    public boolean matches(String requestPath) {
+        if (output[0]) {
+            return true;
+        }
+        int state = 0;
+        for (int i = 0; i < requestPath.length(); i++) {
+            char c = requestPath.charAt(i);
+            int next = transition(childKeys, childNodes, state, c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = transition(childKeys, childNodes, state, c);
+            }
+            state = next < 0 ? 0 : next;
+            if (output[state]) {
+                return true;
+            }
+        }
+        if (combinedPattern != null && combinedPattern.matcher(requestPath).matches()) {
+            return true;
+        }
+        for (Pattern pattern : standalonePatterns) {
+            if (pattern.matcher(requestPath).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 白名单条数
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int transition(char[][] childKeys, int[][] childNodes, int node, char c) {
+        int index = Arrays.binarySearch(childKeys[node], c);
+        return index < 0 ? -1 : childNodes[node][index];
+    }
+
+    /**
+     * 合并正则
+     *
+     * @param patternList
+     * @return 没有可合并的正则或合并失败时返回 null
+     */
+    private static Pattern combine(List<Pattern> patternList) {
+        if (patternList.isEmpty()) {
+            return null;
+        }
+        StringBuilder combined = new StringBuilder();
+        for (Pattern pattern : patternList) {
+            combined.append(combined.length() > 0 ? "|" : "").append("(?:").append(pattern.pattern()).append(')');
+        }
+        try {
+            return Pattern.compile(combined.toString());
+        } catch (PatternSyntaxException e) {
+            log.warn("白名单正则合并失败,逐条匹配: {}", e.getDescription());
+            return null;
+        }
+    }
+
+    /**
+     * 正则是否可以与其他正则合并: 反向引用(分组编号会变化)、命名分组(可能重名)、内联标志(可能影响后续分支)、
+     * \Q 引用(未闭合时会吞掉后续分支)合并后语义可能改变,单独匹配
+     *
+     * @param regex
+     * @return
+     */
+    private static boolean isCombinable(String regex) {
+        for (int i = 0; i < regex.length() - 1; i++) {
+            char c = regex.charAt(i);
+            char next = regex.charAt(i + 1);
+            if (c == '\\') {
+                if ((next >= '1' && next <= '9') || next == 'k' || next == 'Q') {
+                    return false;
+                }
+                i++;
+            } else if (c == '(' && next == '?' && i + 2 < regex.length()) {
+                char flag = regex.charAt(i + 2);
+                boolean namedGroup = flag == '<' && i + 3 < regex.length()
+                        && regex.charAt(i + 3) != '=' && regex.charAt(i + 3) != '!';
+                if (namedGroup || Character.isLetter(flag) || flag == '-') {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+}
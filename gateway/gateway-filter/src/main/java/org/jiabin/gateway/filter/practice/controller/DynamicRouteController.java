@@ -1,15 +1,24 @@
 package org.jiabin.gateway.filter.practice.controller;
 
 import org.jiabin.gateway.filter.practice.common.api.ApiResult;
+import org.jiabin.gateway.filter.practice.common.config.WebFluxConfig;
+import org.jiabin.gateway.filter.practice.model.RouteChange;
 import org.jiabin.gateway.filter.practice.model.RouteDeleteParam;
+import org.jiabin.gateway.filter.practice.model.RouteListParam;
+import org.jiabin.gateway.filter.practice.model.RouteStatus;
 import org.jiabin.gateway.filter.practice.service.DynamicRouteService;
 import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
@@ -28,13 +37,41 @@ public class DynamicRouteController {
 
     /**
      * 查询启用的路由列表
+     * 默认返回 ApiResult 包装的 json 数组; Accept 为 application/x-ndjson 或 text/event-stream 时逐条输出
      *
+     * @param listParam
+     * @param request
      * @return
      */
-    @GetMapping(value = "/list/active", produces = {MediaType.APPLICATION_JSON_VALUE})
-    public ResponseEntity<ApiResult<List<RouteDefinition>>> listActive() {
-        log.info("/list/active");
-        return ResponseEntity.ok(ApiResult.success(routeService.listActive()));
+    @GetMapping(value = "/list/active", produces = {MediaType.APPLICATION_JSON_VALUE,
+            WebFluxConfig.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_STREAM_JSON_VALUE,
+            MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Publisher<?> listActive(RouteListParam listParam, ServerHttpRequest request) {
+        log.debug("/list/active,查询路由列表参数: {}", listParam);
+        Flux<RouteDefinition> routeDefinitionFlux = routeService.listActive(listParam);
+        if (WebFluxConfig.isStreamingRequest(request)) {
+            return routeDefinitionFlux;
+        }
+        return routeDefinitionFlux.collectList().map(ApiResult::success);
+    }
+
+    /**
+     * 查询路由状态
+     * 默认返回 ApiResult 包装的 json 数组; Accept 为 application/x-ndjson 或 text/event-stream 时逐条输出
+     *
+     * @param request
+     * @return
+     */
+    @GetMapping(value = "/list/status", produces = {MediaType.APPLICATION_JSON_VALUE,
+            WebFluxConfig.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_STREAM_JSON_VALUE,
+            MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Publisher<?> listStatus(ServerHttpRequest request) {
+        log.debug("/list/status");
+        Flux<RouteStatus> routeStatusFlux = routeService.listStatus();
+        if (WebFluxConfig.isStreamingRequest(request)) {
+            return routeStatusFlux;
+        }
+        return routeStatusFlux.collectList().map(ApiResult::success);
     }
 
     /**
@@ -44,10 +81,10 @@ public class DynamicRouteController {
      * @return
      */
     @PostMapping(value = "/add", produces = {MediaType.APPLICATION_JSON_VALUE})
-    public ResponseEntity<ApiResult<RouteDefinition>> add(@RequestBody @Validated RouteDefinition routeDefinition) {
+    public Mono<ResponseEntity<ApiResult<RouteDefinition>>> add(@RequestBody @Validated RouteDefinition routeDefinition) {
         log.info("/add,新增路由参数: {}", routeDefinition);
-        routeService.add(routeDefinition);
-        return ResponseEntity.ok(ApiResult.success(routeDefinition));
+        return routeService.add(routeDefinition)
+                .then(Mono.fromCallable(() -> ResponseEntity.ok(ApiResult.success(routeDefinition))));
     }
 
     /**
@@ -57,10 +94,10 @@ public class DynamicRouteController {
      * @return
      */
     @PutMapping(value = "/update", produces = {MediaType.APPLICATION_JSON_VALUE})
-    public ResponseEntity<ApiResult<RouteDefinition>> update(@RequestBody @Validated RouteDefinition routeDefinition) {
+    public Mono<ResponseEntity<ApiResult<RouteDefinition>>> update(@RequestBody @Validated RouteDefinition routeDefinition) {
         log.info("/update,更新路由参数: {}", routeDefinition);
-        routeService.update(routeDefinition);
-        return ResponseEntity.ok(ApiResult.success(routeDefinition));
+        return routeService.update(routeDefinition)
+                .then(Mono.fromCallable(() -> ResponseEntity.ok(ApiResult.success(routeDefinition))));
     }
 
     /**
@@ -70,10 +107,54 @@ public class DynamicRouteController {
      * @return
      */
     @DeleteMapping(value = "/delete", produces = {MediaType.APPLICATION_JSON_VALUE})
-    public ResponseEntity<ApiResult<RouteDeleteParam>> delete(@RequestBody RouteDeleteParam routeDeleteParam) {
+    public Mono<ResponseEntity<ApiResult<RouteDeleteParam>>> delete(@RequestBody RouteDeleteParam routeDeleteParam) {
         log.info("/delete,删除路由参数: {}", routeDeleteParam);
-        routeService.delete(routeDeleteParam);
-        return ResponseEntity.ok(ApiResult.success(routeDeleteParam));
+        return routeService.delete(routeDeleteParam)
+                .then(Mono.fromCallable(() -> ResponseEntity.ok(ApiResult.success(routeDeleteParam))));
+    }
+
+    /**
+     * 批量变更路由
+     * 变更不合法时整批拒绝(400); 中途失败时此前的变更已生效,返回失败的变更序号与已应用条数(500)
+     *
+     * @param routeChangeList
+     * @return
+     */
+    @PostMapping(value = "/batch", produces = {MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<ApiResult<Integer>>> batch(@RequestBody List<RouteChange> routeChangeList) {
+        log.info("/batch,批量变更路由条数: {}", routeChangeList.size());
+        return routeService.applyChanges(routeChangeList)
+                .then(Mono.fromCallable(() -> ResponseEntity.ok(ApiResult.success(routeChangeList.size()))))
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity
+                        .status(HttpStatus.BAD_REQUEST).body(ApiResult.<Integer>fail(e.getMessage()))))
+                .onErrorResume(IllegalStateException.class, e -> Mono.just(ResponseEntity
+                        .status(HttpStatus.INTERNAL_SERVER_ERROR).body(ApiResult.<Integer>fail(e.getMessage()))));
+    }
+
+    /**
+     * 批量导入路由(NDJSON,每行一个 RouteDefinition)
+     *
+     * @param routeDefinitionFlux
+     * @return
+     */
+    @PostMapping(value = "/import", consumes = {WebFluxConfig.APPLICATION_NDJSON_VALUE,
+            MediaType.APPLICATION_STREAM_JSON_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<ApiResult<Integer>>> importRoutes(@RequestBody Flux<RouteDefinition> routeDefinitionFlux) {
+        return routeService.importRoutes(routeDefinitionFlux)
+                .doOnNext(count -> log.info("/import,批量导入路由条数: {}", count))
+                .map(count -> ResponseEntity.ok(ApiResult.success(count)));
+    }
+
+    /**
+     * 导出全部路由(NDJSON,每行一个 RouteDefinition)
+     *
+     * @return
+     */
+    @GetMapping(value = "/export", produces = {WebFluxConfig.APPLICATION_NDJSON_VALUE,
+            MediaType.APPLICATION_STREAM_JSON_VALUE})
+    public Flux<RouteDefinition> exportRoutes() {
+        log.info("/export");
+        return routeService.exportRoutes();
     }
 
 
@@ -0,0 +1,84 @@
+package org.jiabin.gateway.filter.practice.controller;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.jiabin.gateway.filter.practice.common.api.ApiResult;
+import org.jiabin.gateway.filter.practice.model.TokenRevokeParam;
+import org.jiabin.gateway.filter.practice.service.TokenService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * @Description: 网关 token 控制层
+ * token 由认证服务签发并直接写入 redis,网关不提供签发接口;
+ * 注销接口供认证服务在用户退出时调用,需要在请求头中携带内部密钥
+ * @author jiabin.yu
+ * @Date: 2022/8/23
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/gateway/token")
+public class TokenController {
+
+    /**
+     * 内部密钥请求头
+     */
+    public static final String SECRET_HEADER = "X-Gateway-Secret";
+
+    @Autowired
+    private TokenService tokenService;
+
+    /**
+     * 内部调用密钥,未配置时拒绝所有调用
+     */
+    @Value("${gateway.auth.internal-secret:}")
+    private String internalSecret;
+
+    /**
+     * 注销 token
+     *
+     * @param secret
+     * @param revokeParam
+     * @return
+     */
+    @PostMapping(value = "/revoke", produces = {MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<ApiResult<Boolean>>> revoke(
+            @RequestHeader(value = SECRET_HEADER, required = false) String secret,
+            @RequestBody @Validated TokenRevokeParam revokeParam) {
+        if (!validateSecret(secret)) {
+            log.warn("/revoke,内部密钥校验失败");
+            return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResult.fail("Forbidden")));
+        }
+        log.info("/revoke,注销 token");
+        return tokenService.revoke(revokeParam)
+                .map(removed -> ResponseEntity.ok(ApiResult.success(removed)));
+    }
+
+    /**
+     * 校验内部密钥,按固定时间比较
+     *
+     * @param secret
+     * @return
+     */
+    private boolean validateSecret(String secret) {
+        if (StrUtil.isBlank(internalSecret) || secret == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(internalSecret.getBytes(StandardCharsets.UTF_8),
+                secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -1,7 +1,8 @@
 package org.jiabin.gateway.filter.practice.controller;
 
-import com.baomidou.mybatisplus.core.metadata.IPage;
 import org.jiabin.gateway.filter.practice.common.api.ApiResult;
+import org.jiabin.gateway.filter.practice.common.api.CursorPage;
+import org.jiabin.gateway.filter.practice.common.config.WebFluxConfig;
 import org.jiabin.gateway.filter.practice.model.*;
 import org.jiabin.gateway.filter.practice.service.WhiteListService;
 import lombok.extern.slf4j.Slf4j;
@@ -10,6 +11,12 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.function.Function;
 
 /**
  * @Description: 网关路由白名单控制器
@@ -21,6 +28,11 @@ import org.springframework.web.bind.annotation.*;
 @RequestMapping(value = "/api/gateway/whitelist")
 public class WhiteListController {
 
+    /**
+     * 导出时每批查询数量
+     */
+    private static final int EXPORT_BATCH_SIZE = 500;
+
     @Autowired
     private WhiteListService whiteListService;
 
@@ -49,13 +61,13 @@ public class WhiteListController {
     }
 
     /**
-     * 查询单条白名单
+     * 游标分页查询白名单
      *
      * @param pageParam
      * @return
      */
     @GetMapping(value = "/page", produces = {MediaType.APPLICATION_JSON_VALUE})
-    public ResponseEntity<ApiResult<IPage<WhiteListEntity>>> page(@Validated WhiteListPageParam pageParam) {
+    public ResponseEntity<ApiResult<CursorPage<WhiteListEntity>>> page(@Validated WhiteListPageParam pageParam) {
         log.info("/page,分页查询白名单参数: {}", pageParam);
         return ResponseEntity.ok(whiteListService.page(pageParam));
     }
@@ -84,6 +96,45 @@ public class WhiteListController {
         return ResponseEntity.ok(whiteListService.delete(deleteParam));
     }
 
+    /**
+     * 批量导入白名单(NDJSON,每行一个白名单)
+     * 读取全部请求体后在同一个事务内写入,路由类型与路径相同的白名单只保留一条; 任一条失败时整体回滚,
+     * 提交后一次性写入缓存并只通知一次其他节点
+     *
+     * @param whiteListFlux
+     * @return
+     */
+    @PostMapping(value = "/import", consumes = {WebFluxConfig.APPLICATION_NDJSON_VALUE,
+            MediaType.APPLICATION_STREAM_JSON_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<ApiResult<Integer>>> importBatch(@RequestBody Flux<WhiteListEntity> whiteListFlux) {
+        return whiteListFlux.collectList()
+                .publishOn(Schedulers.boundedElastic())
+                .map(whiteListList -> {
+                    List<WhiteListEntity> importedList = whiteListService.importAll(whiteListList);
+                    whiteListService.cacheImported(importedList);
+                    log.info("/import,批量导入白名单条数: {}", importedList.size());
+                    return ResponseEntity.ok(ApiResult.success(importedList.size()));
+                });
+    }
+
+    /**
+     * 导出全部白名单(NDJSON,每行一个白名单)
+     * 按 id 分批查询数据库,边查边输出
+     *
+     * @return
+     */
+    @GetMapping(value = "/export", produces = {WebFluxConfig.APPLICATION_NDJSON_VALUE,
+            MediaType.APPLICATION_STREAM_JSON_VALUE})
+    public Flux<WhiteListEntity> export() {
+        log.info("/export");
+        return Mono.fromCallable(() -> whiteListService.listAfter(null, EXPORT_BATCH_SIZE))
+                .expand(whiteListList -> whiteListList.size() < EXPORT_BATCH_SIZE ? Mono.empty()
+                        : Mono.fromCallable(() -> whiteListService.listAfter(
+                                whiteListList.get(whiteListList.size() - 1).getId(), EXPORT_BATCH_SIZE)))
+                .flatMapIterable(Function.identity())
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
 
 
 }
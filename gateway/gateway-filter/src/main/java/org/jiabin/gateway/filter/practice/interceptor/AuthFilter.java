@@ -2,13 +2,14 @@ package org.jiabin.gateway.filter.practice.interceptor;
 
 import cn.hutool.json.JSONUtil;
 import org.jiabin.gateway.filter.practice.common.api.ApiResult;
-import org.jiabin.gateway.filter.practice.common.component.RedisComponent;
-import org.jiabin.gateway.filter.practice.common.constant.RedisKeyConst;
-import org.jiabin.gateway.filter.practice.model.WhiteListEntity;
+import org.jiabin.gateway.filter.practice.common.component.GatewayMetrics;
+import org.jiabin.gateway.filter.practice.common.component.TokenValidator;
+import org.jiabin.gateway.filter.practice.common.component.WhiteListCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
 import org.springframework.core.Ordered;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpHeaders;
@@ -32,10 +33,22 @@ import java.util.List;
 @Component
 public class AuthFilter implements GlobalFilter, Ordered {
 
-    private static final String TOKEN_KEY = "token";
+    /**
+     * 令牌请求头
+     */
+    public static final String TOKEN_KEY = "token";
+
+    /**
+     * 执行级别
+     */
+    public static final int AUTH_FILTER_ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 100;
 
     @Autowired
-    private RedisComponent redisComponent;
+    private WhiteListCache whiteListCache;
+    @Autowired
+    private GatewayMetrics gatewayMetrics;
+    @Autowired
+    private TokenValidator tokenValidator;
 
     /**
      * 权限过滤
@@ -47,33 +60,49 @@ public class AuthFilter implements GlobalFilter, Ordered {
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
         String requestPath = exchange.getRequest().getPath().value();
-        log.info("requestPath: {}",requestPath);
+        log.debug("requestPath: {}", requestPath);
         // 判断是否符合白名单
         if (validateWhiteList(requestPath)) {
+            gatewayMetrics.whiteListHit();
             return chain.filter(exchange);
         }
+        gatewayMetrics.whiteListMiss();
         List<String> tokenList = exchange.getRequest().getHeaders().get(TOKEN_KEY);
-        log.info("token: {}", tokenList);
         if (CollectionUtils.isEmpty(tokenList) || tokenList.get(0).trim().isEmpty()) {
-            ServerHttpResponse response = exchange.getResponse();
-            // 错误信息
-            byte[] data = JSONUtil.toJsonStr(ApiResult.fail("Token is null")).getBytes(StandardCharsets.UTF_8);
-            DataBuffer buffer = response.bufferFactory().wrap(data);
-            response.setStatusCode(HttpStatus.UNAUTHORIZED);
-            response.getHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
-            return response.writeWith(Mono.just(buffer));
+            log.debug("token is null, requestPath: {}", requestPath);
+            return unauthorized(exchange, "Token is null");
         }
-        return chain.filter(exchange);
+        return tokenValidator.validate(tokenList.get(0).trim())
+                .flatMap(valid -> valid ? chain.filter(exchange) : unauthorized(exchange, "Token is invalid"));
     }
 
     /**
      * 设置执行级别
+     * 在响应缓存等会直接返回响应的过滤器之前执行,未通过鉴权的请求不会读取到缓存
      *
      * @return
      */
     @Override
     public int getOrder() {
-        return Ordered.LOWEST_PRECEDENCE;
+        return AUTH_FILTER_ORDER;
+    }
+
+    /**
+     * 返回鉴权失败
+     *
+     * @param exchange
+     * @param message
+     * @return
+     */
+    private Mono<Void> unauthorized(ServerWebExchange exchange, String message) {
+        gatewayMetrics.unauthorized();
+        ServerHttpResponse response = exchange.getResponse();
+        // 错误信息
+        byte[] data = JSONUtil.toJsonStr(ApiResult.fail(message)).getBytes(StandardCharsets.UTF_8);
+        DataBuffer buffer = response.bufferFactory().wrap(data);
+        response.setStatusCode(HttpStatus.UNAUTHORIZED);
+        response.getHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        return response.writeWith(Mono.just(buffer));
     }
 
     /**
@@ -83,13 +112,6 @@ public class AuthFilter implements GlobalFilter, Ordered {
      * @return
      */
     public boolean validateWhiteList(String requestPath) {
-        List<WhiteListEntity> whiteListList = redisComponent.mapGetAll(RedisKeyConst.KEY_GATEWAY_WHITE_LIST,
-                WhiteListEntity.class);
-        for (WhiteListEntity whiteList : whiteListList) {
-            if (requestPath.contains(whiteList.getPath()) || requestPath.matches(whiteList.getPath())) {
-                return true;
-            }
-        }
-        return false;
+        return whiteListCache.matches(requestPath);
     }
 }
@@ -0,0 +1,73 @@
+package org.jiabin.gateway.filter.practice.interceptor;
+
+import org.jiabin.gateway.filter.practice.common.component.GatewayMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * @Description: 路由指标拦截器
+ * 按路由与请求结果记录请求耗时,最先执行以覆盖整个过滤器链
+ * @author jiabin.yu
+ * @Date: 2022/8/23
+ */
+@Component
+public class MetricsFilter implements GlobalFilter, Ordered {
+
+    private static final String OUTCOME_CANCELLED = "CANCELLED";
+    private static final String OUTCOME_ERROR = "ERROR";
+    private static final String OUTCOME_UNKNOWN = "UNKNOWN";
+
+    @Autowired
+    private GatewayMetrics gatewayMetrics;
+
+    /**
+     * 记录请求耗时
+     *
+     * @param exchange
+     * @param chain
+     * @return
+     */
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        long start = System.nanoTime();
+        return chain.filter(exchange)
+                .doFinally(signalType -> gatewayMetrics.recordRequest(routeId(exchange),
+                        outcome(exchange, signalType), System.nanoTime() - start));
+    }
+
+    /**
+     * 设置执行级别
+     *
+     * @return
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    private String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route == null ? GatewayMetrics.ROUTE_NONE : route.getId();
+    }
+
+    private String outcome(ServerWebExchange exchange, SignalType signalType) {
+        if (signalType == SignalType.CANCEL) {
+            return OUTCOME_CANCELLED;
+        }
+        HttpStatus status = exchange.getResponse().getStatusCode();
+        if (status != null) {
+            return status.series().name();
+        }
+        return signalType == SignalType.ON_ERROR ? OUTCOME_ERROR : OUTCOME_UNKNOWN;
+    }
+
+}
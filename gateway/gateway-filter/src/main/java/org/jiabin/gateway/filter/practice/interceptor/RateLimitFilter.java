@@ -0,0 +1,379 @@
+package org.jiabin.gateway.filter.practice.interceptor;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.jiabin.gateway.filter.practice.common.api.ApiResult;
+import org.jiabin.gateway.filter.practice.common.component.GatewayMetrics;
+import org.jiabin.gateway.filter.practice.common.component.ReactiveRedisComponent;
+import org.jiabin.gateway.filter.practice.common.constant.RedisKeyConst;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * @Description: 分布式限流拦截器
+ * 按路由 metadata 配置限流,令牌桶保存在 redis 中,各节点每次申请一批令牌在本地消费,大部分请求不访问 redis;
+ * redis 超时或异常时在一段时间内放行请求(降级),不因限流组件故障影响业务。路由 metadata 配置示例:
+ * {"rateLimit.replenishRate": 100, "rateLimit.burstCapacity": 200, "rateLimit.keyResolver": "header:token"}
+ * keyResolver 可选值: route(整个路由共用,默认)、ip(客户端 IP)、header:请求头名称
+ * @author jiabin.yu
+ * @Date: 2022/8/23
+ */
+@Slf4j
+@Component
+public class RateLimitFilter implements GlobalFilter, Ordered {
+
+    public static final String METADATA_REPLENISH_RATE = "rateLimit.replenishRate";
+    public static final String METADATA_BURST_CAPACITY = "rateLimit.burstCapacity";
+    public static final String METADATA_KEY_RESOLVER = "rateLimit.keyResolver";
+    public static final String METADATA_LEASE_SIZE = "rateLimit.leaseSize";
+
+    private static final String KEY_RESOLVER_ROUTE = "route";
+    private static final String KEY_RESOLVER_IP = "ip";
+    private static final String KEY_RESOLVER_HEADER_PREFIX = "header:";
+    private static final String KEY_ANONYMOUS = "anonymous";
+
+    private static final String RESULT_ALLOWED = "allowed";
+    private static final String RESULT_REJECTED = "rejected";
+    private static final String RESULT_DEGRADED = "degraded";
+
+    /**
+     * 单个请求最多申请令牌次数,共享的申请获得的令牌被其他等待请求用完时重新申请
+     */
+    private static final int MAX_LEASE_ATTEMPTS = 3;
+
+    /**
+     * 令牌桶脚本
+     */
+    private static final RedisScript<Long> RATE_LIMIT_SCRIPT = RedisScript.of(
+            new ClassPathResource("scripts/gateway_rate_limit.lua"), Long.class);
+
+    @Autowired
+    private ReactiveRedisComponent reactiveRedisComponent;
+    @Autowired
+    private GatewayMetrics gatewayMetrics;
+
+    /**
+     * 申请令牌超时时间,单位: 毫秒
+     */
+    @Value("${gateway.rate-limit.redis-timeout-millis:20}")
+    private long redisTimeoutMillis;
+
+    /**
+     * 本地令牌有效时间,单位: 毫秒,过期未用完的令牌作废,避免节点长期囤积令牌
+     */
+    @Value("${gateway.rate-limit.lease-ttl-millis:1000}")
+    private long leaseTtlMillis;
+
+    /**
+     * redis 异常后的降级放行时间,单位: 毫秒
+     */
+    @Value("${gateway.rate-limit.degrade-millis:1000}")
+    private long degradeMillis;
+
+    /**
+     * 路由限流配置, key: 路由 id
+     */
+    private final Map<String, RateLimitConfig> configMap = new ConcurrentHashMap<>(16);
+
+    /**
+     * 本地令牌桶, key: 路由 id + 限流 key,长时间未访问自动移除
+     */
+    private final Cache<String, LocalBucket> bucketCache = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(1, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * 降级截止时间(毫秒时间戳)
+     */
+    private volatile long degradedUntil;
+
+    /**
+     * 限流
+     *
+     * @param exchange
+     * @param chain
+     * @return
+     */
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route == null) {
+            return chain.filter(exchange);
+        }
+        RateLimitConfig config = getConfig(route);
+        if (!config.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        String limitKey = route.getId() + ':' + resolveKey(config, exchange);
+        LocalBucket bucket = bucketCache.get(limitKey, k -> new LocalBucket());
+        long now = System.currentTimeMillis();
+        if (bucket.tryAcquire(now)) {
+            gatewayMetrics.rateLimit(route.getId(), RESULT_ALLOWED);
+            return chain.filter(exchange);
+        }
+        // redis 中的令牌桶刚被取空,补充出新令牌之前直接拒绝,不再访问 redis
+        if (bucket.isExhausted(now)) {
+            gatewayMetrics.rateLimit(route.getId(), RESULT_REJECTED);
+            return tooManyRequests(exchange);
+        }
+        return acquire(exchange, chain, route, limitKey, config, bucket, null, 1);
+    }
+
+    /**
+     * 从 redis 申请令牌后获取,同一个令牌桶的并发请求共享同一次申请
+     * 只有申请本身没有获得令牌(redis 令牌桶已空)时才拒绝; 获得的令牌被其他等待请求用完时重新申请,最多 MAX_LEASE_ATTEMPTS 次
+     *
+     * @param previousLease 上一次等待的申请,已完成的申请不再复用
+     * @param attempt 第几次申请
+     * @return
+     */
+    private Mono<Void> acquire(ServerWebExchange exchange, GatewayFilterChain chain, Route route, String limitKey,
+                               RateLimitConfig config, LocalBucket bucket, Mono<Long> previousLease, int attempt) {
+        if (System.currentTimeMillis() < degradedUntil) {
+            gatewayMetrics.rateLimit(route.getId(), RESULT_DEGRADED);
+            return chain.filter(exchange);
+        }
+        Mono<Long> lease = bucket.lease(() -> leaseTokens(limitKey, config, bucket), previousLease);
+        return lease.flatMap(granted -> {
+            if (granted < 0) {
+                gatewayMetrics.rateLimit(route.getId(), RESULT_DEGRADED);
+                return chain.filter(exchange);
+            }
+            long now = System.currentTimeMillis();
+            if (bucket.tryAcquire(now)) {
+                gatewayMetrics.rateLimit(route.getId(), RESULT_ALLOWED);
+                return chain.filter(exchange);
+            }
+            if (granted == 0 || bucket.isExhausted(now) || attempt >= MAX_LEASE_ATTEMPTS) {
+                gatewayMetrics.rateLimit(route.getId(), RESULT_REJECTED);
+                return tooManyRequests(exchange);
+            }
+            return acquire(exchange, chain, route, limitKey, config, bucket, lease, attempt + 1);
+        });
+    }
+
+    /**
+     * 设置执行级别,在鉴权之前执行
+     *
+     * @return
+     */
+    @Override
+    public int getOrder() {
+        return AuthFilter.AUTH_FILTER_ORDER - 10;
+    }
+
+    /**
+     * 从 redis 申请一批令牌并放入本地令牌桶
+     *
+     * @return 获得的令牌数, redis 不可用时返回 -1
+     */
+    private Mono<Long> leaseTokens(String limitKey, RateLimitConfig config, LocalBucket bucket) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        return reactiveRedisComponent.execute(RATE_LIMIT_SCRIPT,
+                        Collections.singletonList(RedisKeyConst.KEY_GATEWAY_RATE_LIMIT_PREFIX + limitKey),
+                        Arrays.asList(String.valueOf(config.replenishRate), String.valueOf(config.burstCapacity),
+                                String.valueOf(now), String.valueOf(config.leaseSize)))
+                .next()
+                .timeout(Duration.ofMillis(redisTimeoutMillis))
+                .defaultIfEmpty(0L)
+                .doOnNext(granted -> {
+                    gatewayMetrics.recordRateLimitLease(System.nanoTime() - start);
+                    long leasedAt = System.currentTimeMillis();
+                    if (granted > 0) {
+                        bucket.add(granted, leasedAt + leaseTtlMillis);
+                    } else {
+                        bucket.markExhausted(leasedAt + config.retryAfterMillis);
+                    }
+                })
+                .onErrorResume(e -> {
+                    log.warn("限流令牌申请失败,{} 毫秒内放行请求: {}", degradeMillis, e.toString());
+                    degradedUntil = System.currentTimeMillis() + degradeMillis;
+                    return Mono.just(-1L);
+                });
+    }
+
+    private RateLimitConfig getConfig(Route route) {
+        Map<String, Object> metadata = route.getMetadata();
+        RateLimitConfig config = configMap.get(route.getId());
+        if (config != null && config.metadata == metadata) {
+            return config;
+        }
+        config = parseConfig(metadata);
+        configMap.put(route.getId(), config);
+        return config;
+    }
+
+    private RateLimitConfig parseConfig(Map<String, Object> metadata) {
+        long replenishRate = metadata == null ? 0L : Convert.toLong(metadata.get(METADATA_REPLENISH_RATE), 0L);
+        if (replenishRate <= 0) {
+            return new RateLimitConfig(metadata, 0, 0, 0, null);
+        }
+        long burstCapacity = Math.max(replenishRate, Convert.toLong(metadata.get(METADATA_BURST_CAPACITY),
+                replenishRate));
+        // 默认每次申请 1/10 秒的令牌
+        long leaseSize = Math.max(1L, Math.min(burstCapacity, Convert.toLong(metadata.get(METADATA_LEASE_SIZE),
+                replenishRate / 10)));
+        String keyResolver = StrUtil.blankToDefault(Convert.toStr(metadata.get(METADATA_KEY_RESOLVER)),
+                KEY_RESOLVER_ROUTE);
+        return new RateLimitConfig(metadata, replenishRate, burstCapacity, leaseSize, keyResolver);
+    }
+
+    private String resolveKey(RateLimitConfig config, ServerWebExchange exchange) {
+        if (KEY_RESOLVER_IP.equals(config.keyResolver)) {
+            InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+            return remoteAddress == null ? KEY_ANONYMOUS : remoteAddress.getAddress().getHostAddress();
+        }
+        if (config.keyResolver.startsWith(KEY_RESOLVER_HEADER_PREFIX)) {
+            String value = exchange.getRequest().getHeaders()
+                    .getFirst(config.keyResolver.substring(KEY_RESOLVER_HEADER_PREFIX.length()));
+            return StrUtil.isBlank(value) ? KEY_ANONYMOUS : value;
+        }
+        return KEY_RESOLVER_ROUTE;
+    }
+
+    private Mono<Void> tooManyRequests(ServerWebExchange exchange) {
+        ServerHttpResponse response = exchange.getResponse();
+        byte[] data = JSONUtil.toJsonStr(ApiResult.fail("Too many requests")).getBytes(StandardCharsets.UTF_8);
+        DataBuffer buffer = response.bufferFactory().wrap(data);
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        return response.writeWith(Mono.just(buffer));
+    }
+
+    /**
+     * 路由限流配置
+     */
+    private static final class RateLimitConfig {
+
+        /**
+         * 解析来源,路由 metadata 变化时重新解析
+         */
+        private final Map<String, Object> metadata;
+
+        private final long replenishRate;
+
+        private final long burstCapacity;
+
+        private final long leaseSize;
+
+        private final String keyResolver;
+
+        /**
+         * 令牌桶取空后补充出一个令牌所需时间,单位: 毫秒
+         */
+        private final long retryAfterMillis;
+
+        private RateLimitConfig(Map<String, Object> metadata, long replenishRate, long burstCapacity,
+                                long leaseSize, String keyResolver) {
+            this.metadata = metadata;
+            this.replenishRate = replenishRate;
+            this.burstCapacity = burstCapacity;
+            this.leaseSize = leaseSize;
+            this.keyResolver = keyResolver;
+            this.retryAfterMillis = replenishRate <= 0 ? 0L : Math.max(1L, (1000L + replenishRate - 1) / replenishRate);
+        }
+
+        private boolean isEnabled() {
+            return replenishRate > 0;
+        }
+    }
+
+    /**
+     * 本地令牌桶
+     * 保存从 redis 申请到的令牌,同一时间只有一个申请请求
+     */
+    private static final class LocalBucket {
+
+        private long tokens;
+
+        private long expireAt;
+
+        /**
+         * redis 令牌桶已取空,在此时间(毫秒时间戳)之前不再申请令牌
+         */
+        private long exhaustedUntil;
+
+        private Mono<Long> pendingLease;
+
+        private synchronized boolean tryAcquire(long now) {
+            if (now >= expireAt) {
+                tokens = 0;
+            }
+            if (tokens > 0) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void add(long granted, long expireAt) {
+            this.tokens = granted;
+            this.expireAt = expireAt;
+            this.exhaustedUntil = 0L;
+        }
+
+        private synchronized void markExhausted(long exhaustedUntil) {
+            this.tokens = 0;
+            this.exhaustedUntil = exhaustedUntil;
+        }
+
+        private synchronized boolean isExhausted(long now) {
+            return now < exhaustedUntil;
+        }
+
+        /**
+         * 获取进行中的申请,没有时发起新的申请
+         * 申请完成后、清除之前,等待的请求可能已在重新申请,此时不再复用已完成的 previousLease
+         */
+        private synchronized Mono<Long> lease(Supplier<Mono<Long>> leaseSupplier, Mono<Long> previousLease) {
+            if (pendingLease == null || pendingLease == previousLease) {
+                // 只清除本次申请,不影响完成后已发起的新申请
+                AtomicReference<Mono<Long>> leaseRef = new AtomicReference<>();
+                pendingLease = leaseSupplier.get()
+                        .doFinally(signalType -> clearPending(leaseRef.get()))
+                        .cache();
+                leaseRef.set(pendingLease);
+            }
+            return pendingLease;
+        }
+
+        private synchronized void clearPending(Mono<Long> lease) {
+            if (pendingLease == lease) {
+                pendingLease = null;
+            }
+        }
+    }
+
+}
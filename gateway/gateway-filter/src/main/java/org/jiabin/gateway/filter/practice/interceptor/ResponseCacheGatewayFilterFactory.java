@@ -0,0 +1,396 @@
+package org.jiabin.gateway.filter.practice.interceptor;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.jiabin.gateway.filter.practice.common.component.ReactiveRedisComponent;
+import org.jiabin.gateway.filter.practice.common.constant.RedisKeyConst;
+import org.jiabin.gateway.filter.practice.model.CachedResponse;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * @Description: 响应缓存过滤器
+ * 缓存 GET 请求的 200 响应,本地(按字节数限制容量)与 redis 两级缓存;同一 key 的并发未命中只有一个请求访问后端,
+ * 其余请求等待其结果。携带 token/Authorization 的请求只有在 vary 中包含该请求头时才缓存;
+ * 没有 Content-Length 或超过大小上限、带 Set-Cookie 或 Cache-Control: private 的响应直接流式输出,不缓存。
+ * 缓存 key 始终包含规范化后的 Accept-Encoding,压缩后的响应只会返回给同样接受该编码的请求;
+ * 后端响应的 Vary 为 * 或包含未参与缓存 key 计算的请求头时不缓存。路由配置示例:
+ * {"name": "ResponseCache", "args": {"ttlSeconds": "60", "vary": "Accept,Accept-Language"}}
+ * @author jiabin.yu
+ * @Date: 2021/10/22
+ */
+@Slf4j
+@Component
+public class ResponseCacheGatewayFilterFactory
+        extends AbstractGatewayFilterFactory<ResponseCacheGatewayFilterFactory.Config> {
+
+    /**
+     * 缓存命中状态响应头
+     */
+    public static final String CACHE_STATUS_HEADER = "X-Gateway-Cache";
+
+    private static final String CACHE_HIT = "HIT";
+    private static final String CACHE_MISS = "MISS";
+
+    /**
+     * 不缓存的响应头
+     */
+    private static final List<String> EXCLUDED_HEADERS = Arrays.asList(HttpHeaders.TRANSFER_ENCODING,
+            HttpHeaders.CONNECTION, HttpHeaders.CONTENT_LENGTH, HttpHeaders.SET_COOKIE, CACHE_STATUS_HEADER);
+
+    /**
+     * 身份凭证请求头,携带时响应可能因用户而异
+     */
+    private static final List<String> CREDENTIAL_HEADERS = Arrays.asList(HttpHeaders.AUTHORIZATION,
+            AuthFilter.TOKEN_KEY);
+
+    @Autowired
+    private ReactiveRedisComponent reactiveRedisComponent;
+
+    /**
+     * 本地缓存最大字节数
+     */
+    @Value("${gateway.response-cache.local-max-bytes:67108864}")
+    private long localMaxBytes;
+
+    /**
+     * 可缓存的最大响应体字节数
+     */
+    @Value("${gateway.response-cache.max-body-bytes:1048576}")
+    private int maxBodyBytes;
+
+    /**
+     * 读取 redis 缓存超时时间,单位: 毫秒
+     */
+    @Value("${gateway.response-cache.redis-timeout-millis:50}")
+    private long redisTimeoutMillis;
+
+    /**
+     * 并发未命中时等待首个请求结果的超时时间,单位: 毫秒
+     */
+    @Value("${gateway.response-cache.coalesce-timeout-millis:3000}")
+    private long coalesceTimeoutMillis;
+
+    /**
+     * 本地缓存, key: 缓存 key
+     */
+    private Cache<String, CachedResponse> localCache;
+
+    /**
+     * 正在访问后端的请求, key: 缓存 key, value: 响应结果(不可缓存时为 null)
+     */
+    private final Map<String, CompletableFuture<CachedResponse>> inFlightMap = new ConcurrentHashMap<>(16);
+
+    public ResponseCacheGatewayFilterFactory() {
+        super(Config.class);
+    }
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumWeight(localMaxBytes)
+                .weigher((String key, CachedResponse cached) -> key.length() + cached.getBody().length)
+                .expireAfter(new Expiry<String, CachedResponse>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedResponse cached, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(
+                                Math.max(0L, cached.getExpireAt() - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedResponse cached, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(key, cached, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedResponse cached, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return Arrays.asList("ttlSeconds", "vary");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        List<String> varyList = StrUtil.splitTrim(StrUtil.nullToEmpty(config.getVary()), ',');
+        long ttlSeconds = config.getTtlSeconds();
+        // 在 NettyWriteResponseFilter 之前执行,才能替换其写出响应时使用的 response
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+            if (request.getMethod() != HttpMethod.GET || ttlSeconds <= 0 || isNoCache(request.getHeaders())
+                    || isPersonalized(request.getHeaders(), varyList)) {
+                return chain.filter(exchange);
+            }
+            String cacheKey = cacheKey(exchange, varyList);
+            CachedResponse localCached = localCache.getIfPresent(cacheKey);
+            if (localCached != null && localCached.getExpireAt() > System.currentTimeMillis()) {
+                return writeCached(exchange, localCached);
+            }
+            return readRedis(cacheKey)
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(redisCached -> {
+                        if (redisCached.isPresent()) {
+                            localCache.put(cacheKey, redisCached.get());
+                            return writeCached(exchange, redisCached.get());
+                        }
+                        return fetch(exchange, chain::filter, cacheKey, ttlSeconds, varyList);
+                    });
+        }, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+    }
+
+    /**
+     * 访问后端并缓存响应,同一 key 的并发请求等待首个请求的结果
+     */
+    private Mono<Void> fetch(ServerWebExchange exchange, Function<ServerWebExchange, Mono<Void>> chain,
+                             String cacheKey, long ttlSeconds, List<String> varyList) {
+        CompletableFuture<CachedResponse> future = new CompletableFuture<>();
+        CompletableFuture<CachedResponse> leader = inFlightMap.putIfAbsent(cacheKey, future);
+        if (leader != null) {
+            return Mono.fromFuture(leader)
+                    .timeout(Duration.ofMillis(coalesceTimeoutMillis))
+                    .map(Optional::of)
+                    .onErrorReturn(Optional.empty())
+                    .defaultIfEmpty(Optional.empty())
+                    .flatMap(cached -> cached.isPresent() ? writeCached(exchange, cached.get())
+                            : chain.apply(exchange));
+        }
+        CachingResponseDecorator responseDecorator = new CachingResponseDecorator(exchange.getResponse(), cacheKey,
+                ttlSeconds, varyList, future);
+        return chain.apply(exchange.mutate().response(responseDecorator).build())
+                .doFinally(signalType -> {
+                    // 响应不可缓存或请求失败时,等待中的请求各自访问后端
+                    future.complete(null);
+                    inFlightMap.remove(cacheKey, future);
+                });
+    }
+
+    private Mono<CachedResponse> readRedis(String cacheKey) {
+        return reactiveRedisComponent.get(redisKey(cacheKey))
+                .timeout(Duration.ofMillis(redisTimeoutMillis))
+                .onErrorResume(e -> {
+                    log.debug("读取响应缓存失败: {}", e.getMessage());
+                    return Mono.empty();
+                })
+                .ofType(CachedResponse.class)
+                .filter(cached -> cached.getExpireAt() > System.currentTimeMillis());
+    }
+
+    private void store(String cacheKey, CachedResponse cached, long ttlSeconds) {
+        localCache.put(cacheKey, cached);
+        reactiveRedisComponent.set(redisKey(cacheKey), cached, ttlSeconds)
+                .subscribe(null, e -> log.warn("写入响应缓存失败: {}", e.getMessage()));
+    }
+
+    /**
+     * 输出缓存的响应,响应体直接包装缓存的字节数组,不复制
+     */
+    private Mono<Void> writeCached(ServerWebExchange exchange, CachedResponse cached) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.valueOf(cached.getStatusCode()));
+        HttpHeaders headers = response.getHeaders();
+        headers.putAll(cached.getHeaders());
+        headers.setContentLength(cached.getBody().length);
+        headers.set(CACHE_STATUS_HEADER, CACHE_HIT);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.getBody())));
+    }
+
+    private String cacheKey(ServerWebExchange exchange, List<String> varyList) {
+        ServerHttpRequest request = exchange.getRequest();
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        StringBuilder cacheKey = new StringBuilder(128)
+                .append(route == null ? "" : route.getId()).append('|')
+                .append(request.getPath().value()).append('?')
+                .append(StrUtil.nullToEmpty(request.getURI().getRawQuery()));
+        for (String vary : varyList) {
+            cacheKey.append('|').append(vary).append('=').append(request.getHeaders().getOrEmpty(vary));
+        }
+        cacheKey.append('|').append(HttpHeaders.ACCEPT_ENCODING).append('=')
+                .append(normalizeAcceptEncoding(request.getHeaders()));
+        return cacheKey.toString();
+    }
+
+    /**
+     * 规范化 Accept-Encoding: 小写、去除空白并排序,避免写法不同的等价请求头分散缓存
+     */
+    private String normalizeAcceptEncoding(HttpHeaders headers) {
+        List<String> encodingList = new ArrayList<>(4);
+        for (String value : headers.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String encoding : StrUtil.splitTrim(value, ',')) {
+                encodingList.add(StrUtil.cleanBlank(encoding).toLowerCase(Locale.ROOT));
+            }
+        }
+        Collections.sort(encodingList);
+        return String.join(",", encodingList);
+    }
+
+    /**
+     * 后端响应的 Vary 中的请求头是否都参与了缓存 key 计算
+     */
+    private boolean isVaryCovered(HttpHeaders headers, List<String> varyList) {
+        for (String value : headers.getOrEmpty(HttpHeaders.VARY)) {
+            for (String vary : StrUtil.splitTrim(value, ',')) {
+                if ("*".equals(vary)) {
+                    return false;
+                }
+                if (!HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase(vary)
+                        && varyList.stream().noneMatch(vary::equalsIgnoreCase)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private String redisKey(String cacheKey) {
+        return RedisKeyConst.KEY_GATEWAY_RESPONSE_CACHE_PREFIX + SecureUtil.sha256(cacheKey);
+    }
+
+    private boolean isNoCache(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        return cacheControl != null && (cacheControl.contains("no-cache") || cacheControl.contains("no-store"));
+    }
+
+    /**
+     * 请求携带身份凭证且缓存 key 不区分该凭证时,不同用户可能命中同一份缓存,不缓存
+     */
+    private boolean isPersonalized(HttpHeaders headers, List<String> varyList) {
+        for (String credentialHeader : CREDENTIAL_HEADERS) {
+            if (headers.containsKey(credentialHeader)
+                    && varyList.stream().noneMatch(credentialHeader::equalsIgnoreCase)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isCacheable(ServerHttpResponse response, List<String> varyList) {
+        if (response.getStatusCode() != HttpStatus.OK) {
+            return false;
+        }
+        HttpHeaders headers = response.getHeaders();
+        if (headers.containsKey(HttpHeaders.SET_COOKIE) || !isVaryCovered(headers, varyList)) {
+            return false;
+        }
+        // 没有 Content-Length(分块传输)或超过上限的响应体直接流式输出,不在内存中聚合
+        long contentLength = headers.getContentLength();
+        if (contentLength < 0 || contentLength > maxBodyBytes) {
+            return false;
+        }
+        String cacheControl = headers.getCacheControl();
+        return cacheControl == null || !(cacheControl.contains("private") || cacheControl.contains("no-store")
+                || cacheControl.contains("no-cache"));
+    }
+
+    /**
+     * 缓存响应体的 response 装饰器
+     */
+    private class CachingResponseDecorator extends ServerHttpResponseDecorator {
+
+        private final String cacheKey;
+
+        private final long ttlSeconds;
+
+        private final List<String> varyList;
+
+        private final CompletableFuture<CachedResponse> future;
+
+        private CachingResponseDecorator(ServerHttpResponse delegate, String cacheKey, long ttlSeconds,
+                                         List<String> varyList, CompletableFuture<CachedResponse> future) {
+            super(delegate);
+            this.cacheKey = cacheKey;
+            this.ttlSeconds = ttlSeconds;
+            this.varyList = varyList;
+            this.future = future;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            if (!isCacheable(getDelegate(), varyList)) {
+                return super.writeWith(body);
+            }
+            // Content-Length 已校验,聚合时仍限制字节数,防止后端实际返回的响应体超过声明的长度
+            return DataBufferUtils.join(body, maxBodyBytes).flatMap(joined -> {
+                byte[] bytes = new byte[joined.readableByteCount()];
+                joined.read(bytes);
+                DataBufferUtils.release(joined);
+                CachedResponse cached = new CachedResponse();
+                cached.setStatusCode(HttpStatus.OK.value());
+                Map<String, List<String>> headers = new LinkedHashMap<>(16);
+                getDelegate().getHeaders().forEach((name, values) -> {
+                    if (EXCLUDED_HEADERS.stream().noneMatch(name::equalsIgnoreCase)) {
+                        headers.put(name, new ArrayList<>(values));
+                    }
+                });
+                cached.setHeaders(headers);
+                cached.setBody(bytes);
+                cached.setExpireAt(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds));
+                store(cacheKey, cached, ttlSeconds);
+                future.complete(cached);
+                getDelegate().getHeaders().set(CACHE_STATUS_HEADER, CACHE_MISS);
+                return super.writeWith(Mono.just(bufferFactory().wrap(bytes)));
+            });
+        }
+    }
+
+    @Data
+    public static class Config {
+
+        /**
+         * 缓存时间,单位: 秒
+         */
+        private long ttlSeconds = 60;
+
+        /**
+         * 参与缓存 key 计算的请求头,多个以逗号分隔
+         */
+        private String vary;
+
+    }
+
+}
@@ -0,0 +1,47 @@
+package org.jiabin.gateway.filter.practice.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * @Description: 网关缓存变更事件
+ * @author jiabin.yu
+ * @Date: 2022/8/25
+ */
+@Data
+public class CacheChangeEvent implements Serializable {
+
+    private static final long serialVersionUID = 4107736212493578816L;
+
+    /**
+     * 缓存类型, {@link org.jiabin.gateway.filter.practice.common.constant.CacheChangeConst}
+     */
+    private String type;
+
+    /**
+     * 操作类型, {@link org.jiabin.gateway.filter.practice.common.constant.CacheChangeConst}
+     */
+    private String operation;
+
+    /**
+     * 元素 key
+     */
+    private String key;
+
+    /**
+     * 元素值,删除时为空
+     */
+    private Object value;
+
+    /**
+     * 版本号,同一缓存类型内连续递增
+     */
+    private Long version;
+
+    /**
+     * 发布节点 ID
+     */
+    private String nodeId;
+
+}
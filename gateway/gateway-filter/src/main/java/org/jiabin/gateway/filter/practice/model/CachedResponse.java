@@ -0,0 +1,39 @@
+package org.jiabin.gateway.filter.practice.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description: 网关缓存的响应
+ * @author jiabin.yu
+ * @Date: 2021/10/22
+ */
+@Data
+public class CachedResponse implements Serializable {
+
+    private static final long serialVersionUID = 8351946021736478122L;
+
+    /**
+     * 响应状态码
+     */
+    private Integer statusCode;
+
+    /**
+     * 响应头
+     */
+    private Map<String, List<String>> headers;
+
+    /**
+     * 响应体
+     */
+    private byte[] body;
+
+    /**
+     * 过期时间(毫秒时间戳)
+     */
+    private Long expireAt;
+
+}
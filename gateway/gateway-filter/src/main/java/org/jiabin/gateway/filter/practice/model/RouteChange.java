@@ -0,0 +1,51 @@
+package org.jiabin.gateway.filter.practice.model;
+
+import lombok.Data;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+
+import java.io.Serializable;
+
+/**
+ * @Description: 路由变更
+ * @author jiabin.yu
+ * @Date: 2021/10/22
+ */
+@Data
+public class RouteChange implements Serializable {
+
+    private static final long serialVersionUID = 3950232817519052474L;
+
+    /**
+     * 操作类型
+     */
+    private Operation operation;
+
+    /**
+     * 路由,新增与修改时必填
+     */
+    private RouteDefinition routeDefinition;
+
+    /**
+     * 路由 ID,删除时必填
+     */
+    private String routeId;
+
+    /**
+     * 操作类型
+     */
+    public enum Operation {
+        /**
+         * 新增
+         */
+        ADD,
+        /**
+         * 修改
+         */
+        UPDATE,
+        /**
+         * 删除
+         */
+        DELETE
+    }
+
+}
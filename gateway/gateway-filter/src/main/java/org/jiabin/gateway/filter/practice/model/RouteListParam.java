@@ -0,0 +1,32 @@
+package org.jiabin.gateway.filter.practice.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * @Description: 路由列表查询
+ * @author jiabin.yu
+ * @Date: 2021/10/22
+ */
+@Data
+public class RouteListParam implements Serializable {
+
+    private static final long serialVersionUID = 5274920415862378930L;
+
+    /**
+     * 路由 ID 前缀
+     */
+    private String routeId;
+
+    /**
+     * 路由转发地址(包含)
+     */
+    private String uri;
+
+    /**
+     * 断言名称,如 Path、Host
+     */
+    private String predicate;
+
+}
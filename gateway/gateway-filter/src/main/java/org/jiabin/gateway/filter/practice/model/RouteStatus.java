@@ -0,0 +1,43 @@
+package org.jiabin.gateway.filter.practice.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * @Description: 路由状态
+ * 对比存储的路由定义与路由定位器中实际生效的路由
+ * @author jiabin.yu
+ * @Date: 2021/10/22
+ */
+@Data
+public class RouteStatus implements Serializable {
+
+    private static final long serialVersionUID = -1630475263851046795L;
+
+    /**
+     * 路由 ID
+     */
+    private String routeId;
+
+    /**
+     * 路由转发地址
+     */
+    private String uri;
+
+    /**
+     * 执行顺序
+     */
+    private Integer order;
+
+    /**
+     * 是否存在于路由表中
+     */
+    private Boolean stored;
+
+    /**
+     * 是否已编译并在路由定位器中生效
+     */
+    private Boolean compiled;
+
+}
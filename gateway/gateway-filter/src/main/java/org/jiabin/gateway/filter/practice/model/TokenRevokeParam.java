@@ -0,0 +1,24 @@
+package org.jiabin.gateway.filter.practice.model;
+
+import lombok.Data;
+
+import javax.validation.constraints.NotBlank;
+import java.io.Serializable;
+
+/**
+ * @Description: 注销 token
+ * @author jiabin.yu
+ * @Date: 2022/8/23
+ */
+@Data
+public class TokenRevokeParam implements Serializable {
+
+    private static final long serialVersionUID = -6722174581390623307L;
+
+    /**
+     * token
+     */
+    @NotBlank(message = "token不能为空")
+    private String token;
+
+}
@@ -30,9 +30,9 @@ public class WhiteListPageParam implements Serializable {
     private String comment;
 
     /**
-     * 当前页
+     * 游标,上一页返回的 nextCursor,查询第一页时为空
      */
-    private Integer currentPage;
+    private String cursor;
 
     /**
      * 每页显示条数
@@ -2,10 +2,15 @@ package org.jiabin.gateway.filter.practice.repository;
 
 import cn.hutool.core.collection.CollUtil;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
-import org.jiabin.gateway.filter.practice.common.component.RedisComponent;
+import org.jiabin.gateway.filter.practice.common.component.CacheChangeHandler;
+import org.jiabin.gateway.filter.practice.common.component.CacheChangePublisher;
+import org.jiabin.gateway.filter.practice.common.component.ReactiveRedisComponent;
+import org.jiabin.gateway.filter.practice.common.component.RouteRefreshScheduler;
+import org.jiabin.gateway.filter.practice.common.constant.CacheChangeConst;
 import org.jiabin.gateway.filter.practice.common.constant.RedisKeyConst;
 import org.jiabin.gateway.filter.practice.common.util.RouteConvert;
 import org.jiabin.gateway.filter.practice.dao.RouteMapper;
+import org.jiabin.gateway.filter.practice.model.CacheChangeEvent;
 import org.jiabin.gateway.filter.practice.model.RouteEntity;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,51 +19,67 @@ import org.springframework.cloud.gateway.route.RouteDefinitionRepository;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * @Description: 数据库路由持久层
+ * 路由表以不可变快照形式保存在内存中,首次读取时从缓存(或数据库)全量加载,之后按单条路由增量更新
  * @author jiabin.yu
  * @Date: 2021/10/19
  */
 @Slf4j
 @Component
-public class DbRouteRepository implements RouteDefinitionRepository {
+public class DbRouteRepository implements RouteDefinitionRepository, CacheChangeHandler {
+
+    /**
+     * 读写 redis 路由缓存时每批数量
+     */
+    private static final int BATCH_SIZE = 500;
 
     @Autowired
     private RouteMapper routeMapper;
     @Autowired
-    private RedisComponent redisComponent;
+    private ReactiveRedisComponent reactiveRedisComponent;
+    @Autowired
+    private CacheChangePublisher cacheChangePublisher;
+    @Autowired
+    private RouteRefreshScheduler routeRefreshScheduler;
+
+    /**
+     * 当前路由表快照,未加载时为 null
+     */
+    private final AtomicReference<RouteDefinitionSnapshot> snapshot = new AtomicReference<>();
 
     /**
      * 获取路由信息
+     * 数据库操作为阻塞调用,切换到 boundedElastic 线程池执行,避免阻塞事件循环线程
      *
      * @return
      */
     @Override
     public Flux<RouteDefinition> getRouteDefinitions() {
-        List<RouteDefinition> routeDefinitionList = redisComponent.mapGetAll(RedisKeyConst.KEY_GATEWAY_ROUTE,
-                RouteDefinition.class);
-        if (CollUtil.isNotEmpty(routeDefinitionList)) {
-            return  Flux.fromIterable(routeDefinitionList);
+        RouteDefinitionSnapshot current = snapshot.get();
+        if (current != null) {
+            return Flux.fromIterable(current.getRouteList());
         }
-        List<RouteEntity> routeEntityList = routeMapper.selectList(Wrappers.emptyWrapper());
-        if (CollUtil.isEmpty(routeEntityList)) {
-            log.info("数据库内没有定义路由");
-            return Flux.empty();
-        }
-        List<RouteDefinition> routeDefinitionDBList = new ArrayList<>();
-        routeEntityList.forEach(routeEntity -> {
-            routeDefinitionDBList.add(RouteConvert.toRouteDefinition(routeEntity));
-        });
-        log.info("-------------加载数据库路由规则------------");
-        redisComponent.mapPutBatch(RedisKeyConst.KEY_GATEWAY_ROUTE, routeDefinitionDBList.stream()
-                .collect(Collectors.toMap(RouteDefinition::getId, Function.identity())));
-        return  Flux.fromIterable(routeDefinitionDBList);
+        return loadSnapshot()
+                .map(loaded -> snapshot.compareAndSet(null, loaded) ? loaded : snapshot.get())
+                .flatMapIterable(RouteDefinitionSnapshot::getRouteList);
+    }
+
+    /**
+     * 获取当前路由表快照
+     *
+     * @return 未加载时返回空快照
+     */
+    public RouteDefinitionSnapshot getSnapshot() {
+        RouteDefinitionSnapshot current = snapshot.get();
+        return current == null ? RouteDefinitionSnapshot.EMPTY : current;
     }
 
     /**
@@ -69,11 +90,69 @@ public class DbRouteRepository implements RouteDefinitionRepository {
      */
     @Override
     public Mono<Void> save(Mono<RouteDefinition> route) {
-        return route.flatMap(routeDefinition -> {
-            routeMapper.insert(RouteConvert.toRouteEntity(routeDefinition));
-            redisComponent.mapPut(RedisKeyConst.KEY_GATEWAY_ROUTE, routeDefinition.getId(), routeDefinition);
-            return Mono.empty();
-        });
+        return route.flatMap(routeDefinition -> Mono.fromRunnable(() -> {
+                    RouteEntity routeEntity = RouteConvert.toRouteEntity(routeDefinition);
+                    long nowTime = System.currentTimeMillis();
+                    routeEntity.setCreateDate(nowTime);
+                    routeEntity.setUpdateDate(nowTime);
+                    routeMapper.insert(routeEntity);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .then(reactiveRedisComponent.mapPut(RedisKeyConst.KEY_GATEWAY_ROUTE, routeDefinition.getId(),
+                        routeDefinition))
+                .then(Mono.fromRunnable(() -> applyPut(routeDefinition)))
+                .then(cacheChangePublisher.publishReactive(CacheChangeConst.TYPE_ROUTE,
+                        CacheChangeConst.OPERATION_PUT, routeDefinition.getId(), routeDefinition)));
+    }
+
+    /**
+     * 批量新增或替换路由缓存(数据库已写入)
+     * 只写入 redis 与本地路由表,不发布变更通知; 全部批次写入后调用 publishReload 通知其他节点
+     *
+     * @param routeDefinitionList
+     * @return
+     */
+    public Mono<Void> putAll(List<RouteDefinition> routeDefinitionList) {
+        return cacheRoutes(routeDefinitionList)
+                .then(Mono.fromRunnable(() -> snapshot.updateAndGet(current ->
+                        current == null ? null : current.putAll(routeDefinitionList))));
+    }
+
+    /**
+     * 发布一次路由批量变更通知,其他节点收到后全量同步
+     *
+     * @return
+     */
+    public Mono<Void> publishReload() {
+        return cacheChangePublisher.publishReactive(CacheChangeConst.TYPE_ROUTE,
+                CacheChangeConst.OPERATION_RELOAD, null, null);
+    }
+
+    /**
+     * 修改路由
+     * 数据库与缓存均原地更新,不会出现路由先被删除再新增的中间状态
+     *
+     * @param route
+     * @return
+     */
+    public Mono<Void> update(Mono<RouteDefinition> route) {
+        return route.flatMap(routeDefinition -> Mono.fromRunnable(() -> {
+                    RouteEntity routeEntity = RouteConvert.toRouteEntity(routeDefinition);
+                    long nowTime = System.currentTimeMillis();
+                    routeEntity.setUpdateDate(nowTime);
+                    int count = routeMapper.update(routeEntity, Wrappers.<RouteEntity>lambdaUpdate()
+                            .eq(RouteEntity::getRouteId, routeDefinition.getId()));
+                    if (count == 0) {
+                        routeEntity.setCreateDate(nowTime);
+                        routeMapper.insert(routeEntity);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .then(reactiveRedisComponent.mapPut(RedisKeyConst.KEY_GATEWAY_ROUTE, routeDefinition.getId(),
+                        routeDefinition))
+                .then(Mono.fromRunnable(() -> applyPut(routeDefinition)))
+                .then(cacheChangePublisher.publishReactive(CacheChangeConst.TYPE_ROUTE,
+                        CacheChangeConst.OPERATION_PUT, routeDefinition.getId(), routeDefinition)));
     }
 
     /**
@@ -84,10 +163,113 @@ public class DbRouteRepository implements RouteDefinitionRepository {
      */
     @Override
     public Mono<Void> delete(Mono<String> routeId) {
-        return routeId.flatMap(id -> {
-            routeMapper.delete(Wrappers.lambdaQuery(new RouteEntity()).eq(RouteEntity::getRouteId, id));
-            redisComponent.mapRemove(RedisKeyConst.KEY_GATEWAY_ROUTE, id);
-            return Mono.empty();
-        });
+        return routeId.flatMap(id -> Mono.fromRunnable(() ->
+                        routeMapper.delete(Wrappers.lambdaQuery(new RouteEntity()).eq(RouteEntity::getRouteId, id)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then(reactiveRedisComponent.mapRemove(RedisKeyConst.KEY_GATEWAY_ROUTE, id))
+                .then(Mono.fromRunnable(() -> applyRemove(id)))
+                .then(cacheChangePublisher.publishReactive(CacheChangeConst.TYPE_ROUTE,
+                        CacheChangeConst.OPERATION_REMOVE, id, null)));
+    }
+
+    @Override
+    public String cacheType() {
+        return CacheChangeConst.TYPE_ROUTE;
+    }
+
+    /**
+     * 其他节点修改了路由,增量更新本节点路由表后刷新路由
+     *
+     * @param event
+     */
+    @Override
+    public void applyChange(CacheChangeEvent event) {
+        if (CacheChangeConst.OPERATION_REMOVE.equals(event.getOperation())) {
+            applyRemove(event.getKey());
+        } else {
+            applyPut((RouteDefinition) event.getValue());
+        }
+        routeRefreshScheduler.requestRefresh();
+    }
+
+    /**
+     * 从缓存全量重新加载路由表
+     * 首次收到变更通知时本节点尚未记录版本号,也会走到这里
+     */
+    @Override
+    public void resync() {
+        loadSnapshot().subscribe(loaded -> {
+            snapshot.set(loaded);
+            routeRefreshScheduler.requestRefresh();
+        }, e -> log.error("重新加载路由失败", e));
+    }
+
+    /**
+     * 新增或替换快照中的一条路由
+     *
+     * @param routeDefinition
+     */
+    private void applyPut(RouteDefinition routeDefinition) {
+        snapshot.updateAndGet(current -> current == null ? null : current.put(routeDefinition));
+    }
+
+    /**
+     * 删除快照中的一条路由
+     *
+     * @param routeId
+     */
+    private void applyRemove(String routeId) {
+        RouteConvert.evict(routeId);
+        snapshot.updateAndGet(current -> current == null ? null : current.remove(routeId));
+    }
+
+    /**
+     * 从缓存加载路由表,缓存为空时从数据库加载
+     *
+     * @return
+     */
+    private Mono<RouteDefinitionSnapshot> loadSnapshot() {
+        long version = snapshot.get() == null ? 1L : snapshot.get().getVersion() + 1;
+        return reactiveRedisComponent.mapScan(RedisKeyConst.KEY_GATEWAY_ROUTE, BATCH_SIZE, RouteDefinition.class)
+                .collectList()
+                .flatMapMany(routeDefinitionList -> CollUtil.isNotEmpty(routeDefinitionList)
+                        ? Flux.fromIterable(routeDefinitionList) : loadFromDb())
+                .collectList()
+                .map(routeDefinitionList -> RouteDefinitionSnapshot.of(version, routeDefinitionList));
+    }
+
+    /**
+     * 从数据库加载路由并写入缓存
+     *
+     * @return
+     */
+    private Flux<RouteDefinition> loadFromDb() {
+        return Mono.fromCallable(() -> routeMapper.selectList(Wrappers.<RouteEntity>emptyWrapper()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(routeEntityList -> {
+                    if (CollUtil.isEmpty(routeEntityList)) {
+                        log.info("数据库内没有定义路由");
+                        return Flux.empty();
+                    }
+                    List<RouteDefinition> routeDefinitionDBList = RouteConvert.toRouteDefinitions(routeEntityList);
+                    log.info("-------------加载数据库路由规则------------");
+                    return cacheRoutes(routeDefinitionDBList).thenMany(Flux.fromIterable(routeDefinitionDBList));
+                });
+    }
+
+    /**
+     * 批量写入路由缓存
+     * 分批 HMSET,避免单条命令过大; 各批命令不等待上一批响应,在同一连接上以管道方式发送
+     *
+     * @param routeDefinitionList
+     * @return
+     */
+    private Mono<Void> cacheRoutes(List<RouteDefinition> routeDefinitionList) {
+        return Flux.fromIterable(routeDefinitionList)
+                .buffer(BATCH_SIZE)
+                .flatMap(batchList -> reactiveRedisComponent.mapPutBatch(RedisKeyConst.KEY_GATEWAY_ROUTE,
+                        batchList.stream().collect(Collectors.<RouteDefinition, String, Object>toMap(
+                                RouteDefinition::getId, Function.identity(), (first, second) -> second))))
+                .then();
     }
 }
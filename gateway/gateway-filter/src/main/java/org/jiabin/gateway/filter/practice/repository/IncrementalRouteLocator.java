@@ -0,0 +1,97 @@
+package org.jiabin.gateway.filter.practice.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * @Description: 增量路由定位器
+ * 按路由 id 缓存已构建的路由, RouteDefinition 未变化时直接复用,只有新增或变更的路由才重新构建断言与过滤器
+ * @author jiabin.yu
+ * @Date: 2021/10/19
+ */
+@Slf4j
+public class IncrementalRouteLocator implements RouteLocator {
+
+    /**
+     * 路由定义来源
+     */
+    private final Supplier<RouteDefinitionLocator> routeDefinitionLocatorSupplier;
+    /**
+     * 单条路由构建方法
+     */
+    private final Supplier<Function<RouteDefinition, Flux<Route>>> routeConverterSupplier;
+    /**
+     * 已构建的路由, key: 路由 id
+     */
+    private final Map<String, CachedRoute> routeCache = new ConcurrentHashMap<>(16);
+
+    public IncrementalRouteLocator(Supplier<RouteDefinitionLocator> routeDefinitionLocatorSupplier,
+                                   Supplier<Function<RouteDefinition, Flux<Route>>> routeConverterSupplier) {
+        this.routeDefinitionLocatorSupplier = routeDefinitionLocatorSupplier;
+        this.routeConverterSupplier = routeConverterSupplier;
+    }
+
+    @Override
+    public Flux<Route> getRoutes() {
+        return Flux.defer(() -> {
+            Set<String> routeIdSet = ConcurrentHashMap.newKeySet();
+            Function<RouteDefinition, Flux<Route>> routeConverter = routeConverterSupplier.get();
+            return routeDefinitionLocatorSupplier.get().getRouteDefinitions()
+                    .doOnNext(routeDefinition -> routeIdSet.add(routeDefinition.getId()))
+                    .concatMap(routeDefinition -> toRoute(routeDefinition, routeConverter))
+                    // 清理已删除路由
+                    .doOnComplete(() -> routeCache.keySet().retainAll(routeIdSet));
+        });
+    }
+
+    /**
+     * 获取路由对应的路由定义
+     *
+     * @param route
+     * @return 路由不是由本定位器构建,或已被重新构建时返回 null
+     */
+    public RouteDefinition getRouteDefinition(Route route) {
+        CachedRoute cachedRoute = routeCache.get(route.getId());
+        return cachedRoute != null && cachedRoute.route == route ? cachedRoute.routeDefinition : null;
+    }
+
+    private Flux<Route> toRoute(RouteDefinition routeDefinition, Function<RouteDefinition, Flux<Route>> routeConverter) {
+        CachedRoute cachedRoute = routeCache.get(routeDefinition.getId());
+        if (cachedRoute != null && (cachedRoute.routeDefinition == routeDefinition
+                || cachedRoute.routeDefinition.equals(routeDefinition))) {
+            return Flux.just(cachedRoute.route);
+        }
+        return routeConverter.apply(routeDefinition)
+                .doOnNext(route -> routeCache.put(routeDefinition.getId(), new CachedRoute(routeDefinition, route)))
+                .onErrorResume(e -> {
+                    log.error("路由构建失败, routeId: {}", routeDefinition.getId(), e);
+                    return Flux.empty();
+                });
+    }
+
+    /**
+     * 已构建的路由及其定义
+     */
+    private static final class CachedRoute {
+
+        private final RouteDefinition routeDefinition;
+
+        private final Route route;
+
+        private CachedRoute(RouteDefinition routeDefinition, Route route) {
+            this.routeDefinition = routeDefinition;
+            this.route = route;
+        }
+    }
+
+}
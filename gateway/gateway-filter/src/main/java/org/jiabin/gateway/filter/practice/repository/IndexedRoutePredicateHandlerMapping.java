@@ -0,0 +1,94 @@
+package org.jiabin.gateway.filter.practice.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.config.GlobalCorsProperties;
+import org.springframework.cloud.gateway.handler.FilteringWebHandler;
+import org.springframework.cloud.gateway.handler.RoutePredicateHandlerMapping;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.core.env.Environment;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_PREDICATE_ROUTE_ATTR;
+
+/**
+ * @Description: 基于索引的路由匹配
+ * 默认实现对每个请求按顺序执行全部路由的断言,这里先通过 RouteMatchIndex 筛选候选路由,再按原有顺序执行断言
+ * 路由刷新完成后索引失效(由 RouteLocatorConfig 监听路由刷新结果事件调用 invalidate),下一个请求到达时重新构建
+ * 本类通过 BeanPostProcessor 替换原有 bean,bean 定义的类型仍是 RoutePredicateHandlerMapping,不会被注册为事件监听器
+ * @author jiabin.yu
+ * @Date: 2021/10/19
+ */
+@Slf4j
+public class IndexedRoutePredicateHandlerMapping extends RoutePredicateHandlerMapping {
+
+    private final RouteLocator routeLocator;
+
+    private final Supplier<IncrementalRouteLocator> incrementalRouteLocatorSupplier;
+
+    /**
+     * 当前索引,失效时为 null
+     */
+    private volatile RouteMatchIndex index;
+
+    /**
+     * 路由刷新次数,用于丢弃刷新前开始构建的索引
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public IndexedRoutePredicateHandlerMapping(FilteringWebHandler webHandler, RouteLocator routeLocator,
+                                               GlobalCorsProperties globalCorsProperties, Environment environment,
+                                               Supplier<IncrementalRouteLocator> incrementalRouteLocatorSupplier) {
+        super(webHandler, routeLocator, globalCorsProperties, environment);
+        this.routeLocator = routeLocator;
+        this.incrementalRouteLocatorSupplier = incrementalRouteLocatorSupplier;
+    }
+
+    /**
+     * 索引失效,路由刷新完成后调用
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        index = null;
+    }
+
+    @Override
+    protected Mono<Route> lookupRoute(ServerWebExchange exchange) {
+        return getIndex()
+                .flatMapMany(routeIndex -> Flux.fromIterable(routeIndex.candidates(exchange.getRequest())))
+                .concatMap(route -> Mono.just(route).filterWhen(r -> {
+                    exchange.getAttributes().put(GATEWAY_PREDICATE_ROUTE_ATTR, r.getId());
+                    return r.getPredicate().apply(exchange);
+                }).doOnError(e -> log.error("路由断言执行失败, routeId: {}", route.getId(), e))
+                        .onErrorResume(e -> Mono.empty()))
+                .next()
+                .map(route -> {
+                    validateRoute(route, exchange);
+                    return route;
+                });
+    }
+
+    private Mono<RouteMatchIndex> getIndex() {
+        RouteMatchIndex current = index;
+        if (current != null) {
+            return Mono.just(current);
+        }
+        long currentGeneration = generation.get();
+        return routeLocator.getRoutes().collectList().map(routeList -> {
+            IncrementalRouteLocator incrementalRouteLocator = incrementalRouteLocatorSupplier.get();
+            RouteMatchIndex built = RouteMatchIndex.build(routeList, route -> incrementalRouteLocator == null
+                    ? null : incrementalRouteLocator.getRouteDefinition(route));
+            if (generation.get() == currentGeneration) {
+                index = built;
+            }
+            log.info("路由匹配索引已构建,路由数: {}, 未索引路由数: {}", built.size(), built.fallbackSize());
+            return built;
+        });
+    }
+
+}
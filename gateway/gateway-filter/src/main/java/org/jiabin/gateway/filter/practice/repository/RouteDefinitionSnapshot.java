@@ -0,0 +1,113 @@
+package org.jiabin.gateway.filter.practice.repository;
+
+import org.springframework.cloud.gateway.route.RouteDefinition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Description: 路由表快照(不可变)
+ * 单条路由变更时复制路由引用生成新版本快照,未变更的 RouteDefinition 实例保持不变,
+ * 路由定位器据此复用已构建的路由,不必重新构建全部断言与过滤器
+ * @author jiabin.yu
+ * @Date: 2021/10/19
+ */
+public final class RouteDefinitionSnapshot {
+
+    /**
+     * 空快照
+     */
+    public static final RouteDefinitionSnapshot EMPTY = new RouteDefinitionSnapshot(0L, new LinkedHashMap<>());
+
+    /**
+     * 快照版本号,每次变更加 1
+     */
+    private final long version;
+    /**
+     * 路由, key: 路由 id
+     */
+    private final Map<String, RouteDefinition> routeMap;
+    /**
+     * 路由列表
+     */
+    private final List<RouteDefinition> routeList;
+
+    private RouteDefinitionSnapshot(long version, LinkedHashMap<String, RouteDefinition> routeMap) {
+        this.version = version;
+        this.routeMap = Collections.unmodifiableMap(routeMap);
+        this.routeList = Collections.unmodifiableList(new ArrayList<>(routeMap.values()));
+    }
+
+    /**
+     * 全量创建快照
+     *
+     * @param version
+     * @param routeDefinitions
+     * @return
+     */
+    public static RouteDefinitionSnapshot of(long version, Collection<RouteDefinition> routeDefinitions) {
+        LinkedHashMap<String, RouteDefinition> routeMap = new LinkedHashMap<>(routeDefinitions.size() * 2);
+        routeDefinitions.forEach(routeDefinition -> routeMap.put(routeDefinition.getId(), routeDefinition));
+        return new RouteDefinitionSnapshot(version, routeMap);
+    }
+
+    /**
+     * 新增或替换一条路由
+     *
+     * @param routeDefinition
+     * @return 新版本快照
+     */
+    public RouteDefinitionSnapshot put(RouteDefinition routeDefinition) {
+        LinkedHashMap<String, RouteDefinition> newRouteMap = new LinkedHashMap<>(routeMap);
+        newRouteMap.put(routeDefinition.getId(), routeDefinition);
+        return new RouteDefinitionSnapshot(version + 1, newRouteMap);
+    }
+
+    /**
+     * 批量新增或替换路由
+     *
+     * @param routeDefinitions
+     * @return 新版本快照
+     */
+    public RouteDefinitionSnapshot putAll(Collection<RouteDefinition> routeDefinitions) {
+        LinkedHashMap<String, RouteDefinition> newRouteMap = new LinkedHashMap<>(routeMap);
+        routeDefinitions.forEach(routeDefinition -> newRouteMap.put(routeDefinition.getId(), routeDefinition));
+        return new RouteDefinitionSnapshot(version + 1, newRouteMap);
+    }
+
+    /**
+     * 删除一条路由
+     *
+     * @param routeId
+     * @return 新版本快照,路由不存在时返回当前快照
+     */
+    public RouteDefinitionSnapshot remove(String routeId) {
+        if (!routeMap.containsKey(routeId)) {
+            return this;
+        }
+        LinkedHashMap<String, RouteDefinition> newRouteMap = new LinkedHashMap<>(routeMap);
+        newRouteMap.remove(routeId);
+        return new RouteDefinitionSnapshot(version + 1, newRouteMap);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public RouteDefinition get(String routeId) {
+        return routeMap.get(routeId);
+    }
+
+    public List<RouteDefinition> getRouteList() {
+        return routeList;
+    }
+
+    public int size() {
+        return routeList.size();
+    }
+
+}
@@ -0,0 +1,238 @@
+package org.jiabin.gateway.filter.practice.repository;
+
+import cn.hutool.core.util.StrUtil;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * @Description: 路由匹配索引(不可变)
+ * 路由的多个断言之间为"与"关系,Path 断言的字面量前缀与 Host 断言的精确主机名都是路由匹配的必要条件:
+ * Path 断言按路径段建立前缀树,Host 断言建立精确主机名索引,请求只需要对候选路由逐个执行断言;
+ * 无法建立索引的路由(无 Path/Host 断言、模式以通配符开头、非本定位器构建等)始终作为候选路由。
+ * 候选路由保持原有顺序,匹配结果与逐个检查全部路由一致
+ * @author jiabin.yu
+ * @Date: 2021/10/19
+ */
+public final class RouteMatchIndex {
+
+    private static final String PREDICATE_PATH = "Path";
+    private static final String PREDICATE_HOST = "Host";
+
+    /**
+     * 空索引
+     */
+    public static final RouteMatchIndex EMPTY = build(Collections.emptyList(), route -> null);
+
+    /**
+     * 全部路由,按原有顺序
+     */
+    private final Route[] routes;
+    /**
+     * 路径前缀树根节点
+     */
+    private final PathNode pathRoot;
+    /**
+     * 精确主机名索引, value: 路由下标
+     */
+    private final Map<String, BitSet> hostIndex;
+    /**
+     * 无法建立索引的路由下标
+     */
+    private final BitSet fallback;
+
+    private RouteMatchIndex(Route[] routes, PathNode pathRoot, Map<String, BitSet> hostIndex, BitSet fallback) {
+        this.routes = routes;
+        this.pathRoot = pathRoot;
+        this.hostIndex = hostIndex;
+        this.fallback = fallback;
+    }
+
+    /**
+     * 构建索引
+     *
+     * @param routeList 路由列表,按匹配顺序排列
+     * @param definitionLookup 获取路由对应的路由定义,未知时返回 null
+     * @return
+     */
+    public static RouteMatchIndex build(List<Route> routeList, Function<Route, RouteDefinition> definitionLookup) {
+        Route[] routes = routeList.toArray(new Route[0]);
+        PathNode pathRoot = new PathNode();
+        Map<String, BitSet> hostIndex = new HashMap<>(16);
+        BitSet fallback = new BitSet(routes.length);
+        for (int i = 0; i < routes.length; i++) {
+            RouteDefinition routeDefinition = definitionLookup.apply(routes[i]);
+            List<List<String>> pathPrefixList = null;
+            List<String> hostList = null;
+            if (routeDefinition != null) {
+                for (PredicateDefinition predicate : routeDefinition.getPredicates()) {
+                    if (pathPrefixList == null && PREDICATE_PATH.equalsIgnoreCase(predicate.getName())) {
+                        pathPrefixList = pathPrefixes(predicate);
+                    } else if (hostList == null && PREDICATE_HOST.equalsIgnoreCase(predicate.getName())) {
+                        hostList = exactHosts(predicate);
+                    }
+                }
+            }
+            if (pathPrefixList != null) {
+                for (List<String> pathPrefix : pathPrefixList) {
+                    PathNode node = pathRoot;
+                    for (String segment : pathPrefix) {
+                        node = node.children.computeIfAbsent(segment, k -> new PathNode());
+                    }
+                    node.routeIndexes.set(i);
+                }
+            } else if (hostList != null) {
+                for (String host : hostList) {
+                    hostIndex.computeIfAbsent(host, k -> new BitSet()).set(i);
+                }
+            } else {
+                fallback.set(i);
+            }
+        }
+        return new RouteMatchIndex(routes, pathRoot, hostIndex, fallback);
+    }
+
+    /**
+     * 获取请求的候选路由
+     *
+     * @param request
+     * @return 按原有顺序排列
+     */
+    public List<Route> candidates(ServerHttpRequest request) {
+        BitSet candidateIndexes = (BitSet) fallback.clone();
+        PathNode node = pathRoot;
+        for (PathContainer.Element element : request.getPath().pathWithinApplication().elements()) {
+            if (!(element instanceof PathContainer.PathSegment)) {
+                continue;
+            }
+            node = node.children.get(((PathContainer.PathSegment) element).valueToMatch());
+            if (node == null) {
+                break;
+            }
+            candidateIndexes.or(node.routeIndexes);
+        }
+        String host = request.getHeaders().getFirst(HttpHeaders.HOST);
+        if (host != null) {
+            BitSet hostRouteIndexes = hostIndex.get(host);
+            if (hostRouteIndexes != null) {
+                candidateIndexes.or(hostRouteIndexes);
+            }
+        }
+        List<Route> candidateList = new ArrayList<>(candidateIndexes.cardinality());
+        for (int i = candidateIndexes.nextSetBit(0); i >= 0; i = candidateIndexes.nextSetBit(i + 1)) {
+            candidateList.add(routes[i]);
+        }
+        return candidateList;
+    }
+
+    /**
+     * 路由总数
+     *
+     * @return
+     */
+    public int size() {
+        return routes.length;
+    }
+
+    /**
+     * 无法建立索引的路由数
+     *
+     * @return
+     */
+    public int fallbackSize() {
+        return fallback.cardinality();
+    }
+
+    /**
+     * 解析 Path 断言的字面量前缀
+     *
+     * @param predicate
+     * @return 任一模式没有字面量前缀时返回 null
+     */
+    private static List<List<String>> pathPrefixes(PredicateDefinition predicate) {
+        List<List<String>> pathPrefixList = new ArrayList<>();
+        for (String pattern : patterns(predicate)) {
+            if (!pattern.startsWith("/")) {
+                return null;
+            }
+            List<String> segmentList = new ArrayList<>();
+            for (String segment : StrUtil.split(pattern, '/')) {
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                if (isWildcard(segment)) {
+                    break;
+                }
+                segmentList.add(segment);
+            }
+            if (segmentList.isEmpty()) {
+                return null;
+            }
+            pathPrefixList.add(segmentList);
+        }
+        return pathPrefixList.isEmpty() ? null : pathPrefixList;
+    }
+
+    /**
+     * 解析 Host 断言的精确主机名
+     *
+     * @param predicate
+     * @return 任一模式含通配符时返回 null
+     */
+    private static List<String> exactHosts(PredicateDefinition predicate) {
+        List<String> hostList = patterns(predicate);
+        for (String host : hostList) {
+            if (isWildcard(host)) {
+                return null;
+            }
+        }
+        return hostList.isEmpty() ? null : hostList;
+    }
+
+    /**
+     * 断言参数中的模式,忽略 true/false 等标志参数
+     *
+     * @param predicate
+     * @return
+     */
+    private static List<String> patterns(PredicateDefinition predicate) {
+        List<String> patternList = new ArrayList<>();
+        for (String value : predicate.getArgs().values()) {
+            if (value == null || "true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+                continue;
+            }
+            for (String pattern : StrUtil.split(value, ',')) {
+                if (!pattern.trim().isEmpty()) {
+                    patternList.add(pattern.trim());
+                }
+            }
+        }
+        return patternList;
+    }
+
+    private static boolean isWildcard(String value) {
+        return StrUtil.containsAny(value, '*', '?', '{');
+    }
+
+    /**
+     * 路径前缀树节点
+     */
+    private static final class PathNode {
+
+        private final Map<String, PathNode> children = new HashMap<>(4);
+
+        private final BitSet routeIndexes = new BitSet();
+    }
+
+}
@@ -1,9 +1,14 @@
 package org.jiabin.gateway.filter.practice.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
+import org.jiabin.gateway.filter.practice.model.RouteChange;
 import org.jiabin.gateway.filter.practice.model.RouteDeleteParam;
 import org.jiabin.gateway.filter.practice.model.RouteEntity;
+import org.jiabin.gateway.filter.practice.model.RouteListParam;
+import org.jiabin.gateway.filter.practice.model.RouteStatus;
 import org.springframework.cloud.gateway.route.RouteDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
@@ -18,30 +23,61 @@ public interface DynamicRouteService extends IService<RouteEntity> {
     /**
      * 查询启用的路由列表
      *
+     * @param listParam 过滤条件
      * @return
      */
-    List<RouteDefinition> listActive();
+    Flux<RouteDefinition> listActive(RouteListParam listParam);
+
+    /**
+     * 查询路由状态,包括路由表中的路由与路由定位器中实际生效的路由
+     *
+     * @return
+     */
+    Flux<RouteStatus> listStatus();
 
     /**
      * 新增路由
      *
      * @param routeDefinition
      */
-    void add(RouteDefinition routeDefinition);
+    Mono<Void> add(RouteDefinition routeDefinition);
 
     /**
      * 修改路由
      *
      * @param routeDefinition
      */
-    void update(RouteDefinition routeDefinition);
+    Mono<Void> update(RouteDefinition routeDefinition);
 
     /**
      * 删除路由
      *
      * @param routeDeleteParam
      */
-    void delete(RouteDeleteParam routeDeleteParam);
+    Mono<Void> delete(RouteDeleteParam routeDeleteParam);
+
+    /**
+     * 批量变更路由
+     *
+     * @param routeChangeList
+     * @return
+     */
+    Mono<Void> applyChanges(List<RouteChange> routeChangeList);
+
+    /**
+     * 批量导入路由,路由 id 已存在时替换
+     *
+     * @param routeDefinitionFlux
+     * @return 导入条数
+     */
+    Mono<Integer> importRoutes(Flux<RouteDefinition> routeDefinitionFlux);
+
+    /**
+     * 导出全部路由
+     *
+     * @return
+     */
+    Flux<RouteDefinition> exportRoutes();
 
 
 
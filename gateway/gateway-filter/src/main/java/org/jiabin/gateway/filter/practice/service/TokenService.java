@@ -0,0 +1,21 @@
+package org.jiabin.gateway.filter.practice.service;
+
+import org.jiabin.gateway.filter.practice.model.TokenRevokeParam;
+import reactor.core.publisher.Mono;
+
+/**
+ * @Description: 网关 token 业务接口
+ * @author jiabin.yu
+ * @Date: 2022/8/23
+ */
+public interface TokenService {
+
+    /**
+     * 注销 token
+     *
+     * @param revokeParam
+     * @return token 注销前是否存在
+     */
+    Mono<Boolean> revoke(TokenRevokeParam revokeParam);
+
+}
@@ -3,6 +3,8 @@ package org.jiabin.gateway.filter.practice.service;
 import org.jiabin.gateway.filter.practice.common.api.ApiResult;
 import org.jiabin.gateway.filter.practice.model.*;
 
+import java.util.List;
+
 /**
  * @Description: 白名单业务接口
  * @author jiabin.yu
@@ -28,7 +30,7 @@ public interface WhiteListService {
     ApiResult info(WhiteListInfoParam infoParam);
 
     /**
-     * 分页查询
+     * 游标分页查询
      *
      * @param pageParam
      * @return
@@ -51,4 +53,29 @@ public interface WhiteListService {
      */
     ApiResult delete(WhiteListDeleteParam deleteParam);
 
+    /**
+     * 批量导入,在同一个事务内写入,路由类型与路径相同的记录已存在时更新
+     * 只写入数据库,提交后调用 cacheImported 写入缓存并通知其他节点
+     *
+     * @param whiteListList
+     * @return 写入的白名单
+     */
+    List<WhiteListEntity> importAll(List<WhiteListEntity> whiteListList);
+
+    /**
+     * 批量导入提交后写入缓存并通知其他节点
+     *
+     * @param whiteListList
+     */
+    void cacheImported(List<WhiteListEntity> whiteListList);
+
+    /**
+     * 按 id 升序查询游标之后的记录
+     *
+     * @param cursor 游标(上一批最后一条记录的 id)
+     * @param limit 查询条数
+     * @return
+     */
+    List<WhiteListEntity> listAfter(Long cursor, int limit);
+
 }
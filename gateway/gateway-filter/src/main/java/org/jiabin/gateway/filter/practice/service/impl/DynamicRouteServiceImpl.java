@@ -1,25 +1,36 @@
 package org.jiabin.gateway.filter.practice.service.impl;
 
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import org.jiabin.gateway.filter.practice.common.component.RouteRefreshScheduler;
+import org.jiabin.gateway.filter.practice.common.util.RouteConvert;
 import org.jiabin.gateway.filter.practice.dao.RouteMapper;
+import org.jiabin.gateway.filter.practice.model.RouteChange;
 import org.jiabin.gateway.filter.practice.model.RouteDeleteParam;
 import org.jiabin.gateway.filter.practice.model.RouteEntity;
+import org.jiabin.gateway.filter.practice.model.RouteListParam;
+import org.jiabin.gateway.filter.practice.model.RouteStatus;
 import org.jiabin.gateway.filter.practice.repository.DbRouteRepository;
 import org.jiabin.gateway.filter.practice.service.DynamicRouteService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.route.Route;
 import org.springframework.cloud.gateway.route.RouteDefinition;
-import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.cloud.gateway.route.RouteLocator;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * @Description: 动态路由业务实现类
@@ -28,69 +39,275 @@ import java.util.Objects;
  */
 @Slf4j
 @Service
-public class DynamicRouteServiceImpl extends ServiceImpl<RouteMapper, RouteEntity> implements DynamicRouteService,
-        ApplicationEventPublisherAware {
+public class DynamicRouteServiceImpl extends ServiceImpl<RouteMapper, RouteEntity> implements DynamicRouteService {
 
     @Autowired
     private DbRouteRepository dbRouteRepository;
+    @Autowired
+    private RouteRefreshScheduler routeRefreshScheduler;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private RouteLocator routeLocator;
 
-    private ApplicationEventPublisher applicationEventPublisher;
+    /**
+     * 批量写入数据库时每批数量
+     */
+    private static final int BATCH_SIZE = 500;
 
 
     /**
      * 查询启用的路由列表
+     * 直接读取内存路由表快照,按条件过滤后流式返回
      *
+     * @param listParam 过滤条件
      * @return
      */
     @Override
-    public List<RouteDefinition> listActive() {
-        Flux<RouteDefinition> routeDefinitionFlux = dbRouteRepository.getRouteDefinitions();
-        if (Objects.isNull(routeDefinitionFlux)) {
-            return Collections.emptyList();
-        }
-        List<RouteDefinition> routeDefinitionList = new ArrayList<>();
-        routeDefinitionFlux.collectList().subscribe(routeDefinitionList::addAll);
-        return routeDefinitionList;
+    public Flux<RouteDefinition> listActive(RouteListParam listParam) {
+        return dbRouteRepository.getRouteDefinitions()
+                .filter(routeDefinition -> matches(routeDefinition, listParam));
+    }
+
+    /**
+     * 查询路由状态
+     * 路由表中存在但未生效的路由通常是断言或过滤器配置有误,构建失败
+     *
+     * @return
+     */
+    @Override
+    public Flux<RouteStatus> listStatus() {
+        Mono<Map<String, Route>> compiledRouteMono = routeLocator.getRoutes()
+                .collectMap(Route::getId, Function.identity(), LinkedHashMap::new);
+        return Mono.zip(dbRouteRepository.getRouteDefinitions().collectList(), compiledRouteMono)
+                .flatMapIterable(tuple -> {
+                    Map<String, Route> compiledRouteMap = tuple.getT2();
+                    Map<String, RouteStatus> routeStatusMap = new LinkedHashMap<>(compiledRouteMap.size() * 2);
+                    for (RouteDefinition routeDefinition : tuple.getT1()) {
+                        Route route = compiledRouteMap.get(routeDefinition.getId());
+                        RouteStatus routeStatus = new RouteStatus();
+                        routeStatus.setRouteId(routeDefinition.getId());
+                        routeStatus.setUri(String.valueOf(routeDefinition.getUri()));
+                        routeStatus.setOrder(route == null ? routeDefinition.getOrder() : route.getOrder());
+                        routeStatus.setStored(Boolean.TRUE);
+                        routeStatus.setCompiled(route != null);
+                        routeStatusMap.put(routeDefinition.getId(), routeStatus);
+                    }
+                    // 其他来源(如配置文件)的路由
+                    compiledRouteMap.forEach((routeId, route) -> routeStatusMap.computeIfAbsent(routeId, k -> {
+                        RouteStatus routeStatus = new RouteStatus();
+                        routeStatus.setRouteId(routeId);
+                        routeStatus.setUri(String.valueOf(route.getUri()));
+                        routeStatus.setOrder(route.getOrder());
+                        routeStatus.setStored(Boolean.FALSE);
+                        routeStatus.setCompiled(Boolean.TRUE);
+                        return routeStatus;
+                    }));
+                    return routeStatusMap.values();
+                });
     }
 
     /**
      * 新增路由
      *
      * @param routeDefinition
+     * @return
      */
     @Override
-    public void add(RouteDefinition routeDefinition) {
-        dbRouteRepository.save(Mono.just(routeDefinition)).subscribe();
-        applicationEventPublisher.publishEvent(new RefreshRoutesEvent(this));
+    public Mono<Void> add(RouteDefinition routeDefinition) {
+        return dbRouteRepository.save(Mono.just(routeDefinition))
+                .doOnError(e -> log.error("新增路由失败, routeId: {}", routeDefinition.getId(), e))
+                .then(Mono.fromRunnable(routeRefreshScheduler::requestRefresh));
     }
 
     /**
      * 修改路由
      *
      * @param routeDefinition
+     * @return
      */
     @Override
-    public void update(RouteDefinition routeDefinition) {
-        dbRouteRepository.delete(Mono.just(routeDefinition.getId())).subscribe();
-        dbRouteRepository.save(Mono.just(routeDefinition)).subscribe();
-        applicationEventPublisher.publishEvent(new RefreshRoutesEvent(this));
+    public Mono<Void> update(RouteDefinition routeDefinition) {
+        return dbRouteRepository.update(Mono.just(routeDefinition))
+                .doOnError(e -> log.error("修改路由失败, routeId: {}", routeDefinition.getId(), e))
+                .then(Mono.fromRunnable(routeRefreshScheduler::requestRefresh));
     }
 
     /**
      * 删除路由
      *
      * @param routeDeleteParam
+     * @return
      */
     @Override
-    public void delete(RouteDeleteParam routeDeleteParam) {
-        dbRouteRepository.delete(Mono.just(routeDeleteParam.getRouteId())).subscribe();
-        applicationEventPublisher.publishEvent(new RefreshRoutesEvent(this));
+    public Mono<Void> delete(RouteDeleteParam routeDeleteParam) {
+        return dbRouteRepository.delete(Mono.just(routeDeleteParam.getRouteId()))
+                .doOnError(e -> log.error("删除路由失败, routeId: {}", routeDeleteParam.getRouteId(), e))
+                .then(Mono.fromRunnable(routeRefreshScheduler::requestRefresh));
     }
 
+    /**
+     * 批量变更路由
+     * 先校验全部变更,有任一不合法时整批拒绝,不写入任何数据;
+     * 校验通过后按顺序逐条应用,无论成功、失败或取消都只刷新一次路由(已应用的变更需要生效),
+     * 中途失败时返回的异常中包含失败的变更序号、路由 id 与已应用的条数
+     *
+     * @param routeChangeList
+     * @return
+     */
+    @Override
+    public Mono<Void> applyChanges(List<RouteChange> routeChangeList) {
+        return Mono.defer(() -> {
+            String invalidMessage = validateChanges(routeChangeList);
+            if (invalidMessage != null) {
+                return Mono.error(new IllegalArgumentException(invalidMessage));
+            }
+            // concatMap 逐条执行,无需并发计数
+            int[] appliedCount = {0};
+            return Flux.fromIterable(routeChangeList)
+                    .concatMap(routeChange -> applyChange(routeChange)
+                            .then(Mono.fromRunnable(() -> appliedCount[0]++)))
+                    .then()
+                    .onErrorMap(e -> {
+                        RouteChange failedChange = routeChangeList.get(appliedCount[0]);
+                        log.error("批量变更路由失败, 第 {} 条, routeId: {}, 已应用 {} 条", appliedCount[0] + 1,
+                                getRouteId(failedChange), appliedCount[0], e);
+                        return new IllegalStateException(StrUtil.format("批量变更路由失败, 第 {} 条, routeId: {}, "
+                                        + "已应用前 {} 条: {}", appliedCount[0] + 1, getRouteId(failedChange),
+                                appliedCount[0], e.getMessage()), e);
+                    })
+                    .doFinally(signalType -> routeRefreshScheduler.requestRefresh());
+        });
+    }
 
+    /**
+     * 批量导入路由
+     * 读取全部请求体并按路由 id 去重(重复时以最后一条为准),在同一个事务内批量写入数据库(已存在的路由 id 先删除再插入),
+     * 任一条失败时整体回滚,不写入缓存; 提交后一次性写入缓存,再通知其他节点并刷新一次路由
+     *
+     * @param routeDefinitionFlux
+     * @return 导入的路由数量(按路由 id 去重)
+     */
+    @Override
+    public Mono<Integer> importRoutes(Flux<RouteDefinition> routeDefinitionFlux) {
+        return routeDefinitionFlux.collectList()
+                .map(this::distinctByRouteId)
+                .flatMap(routeDefinitionList -> {
+                    if (routeDefinitionList.isEmpty()) {
+                        return Mono.just(0);
+                    }
+                    Mono<Void> publishMono = dbRouteRepository.publishReload()
+                            .then(Mono.fromRunnable(routeRefreshScheduler::requestRefresh));
+                    return Mono.fromRunnable(() ->
+                                    transactionTemplate.executeWithoutResult(status -> saveRoutes(routeDefinitionList)))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            // 数据库已提交,写入缓存失败时同样需要通知其他节点从数据库同步,再向调用方返回异常
+                            .then(dbRouteRepository.putAll(routeDefinitionList)
+                                    .onErrorResume(e -> publishMono.then(Mono.error(e))))
+                            .then(publishMono)
+                            .thenReturn(routeDefinitionList.size());
+                });
+    }
+
+    /**
+     * 导出全部路由
+     *
+     * @return
+     */
     @Override
-    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
-        this.applicationEventPublisher = applicationEventPublisher;
+    public Flux<RouteDefinition> exportRoutes() {
+        return dbRouteRepository.getRouteDefinitions();
+    }
+
+    /**
+     * 批量写入数据库,已存在的路由 id 先删除再插入
+     *
+     * @param routeDefinitionList
+     */
+    private void saveRoutes(List<RouteDefinition> routeDefinitionList) {
+        long nowTime = System.currentTimeMillis();
+        List<RouteEntity> routeEntityList = new ArrayList<>(routeDefinitionList.size());
+        for (RouteDefinition routeDefinition : routeDefinitionList) {
+            RouteEntity routeEntity = RouteConvert.toRouteEntity(routeDefinition);
+            routeEntity.setCreateDate(nowTime);
+            routeEntity.setUpdateDate(nowTime);
+            routeEntityList.add(routeEntity);
+        }
+        List<String> routeIdList = routeEntityList.stream().map(RouteEntity::getRouteId).collect(Collectors.toList());
+        for (List<String> batchRouteIdList : CollUtil.split(routeIdList, BATCH_SIZE)) {
+            this.remove(Wrappers.<RouteEntity>lambdaQuery().in(RouteEntity::getRouteId, batchRouteIdList));
+        }
+        this.saveBatch(routeEntityList, BATCH_SIZE);
+    }
+
+    /**
+     * 按路由 id 去重,重复的路由 id 以最后一条为准
+     *
+     * @param routeDefinitionList
+     * @return
+     */
+    private List<RouteDefinition> distinctByRouteId(List<RouteDefinition> routeDefinitionList) {
+        Map<String, RouteDefinition> routeDefinitionMap = new LinkedHashMap<>(routeDefinitionList.size() * 2);
+        routeDefinitionList.forEach(routeDefinition -> routeDefinitionMap.put(routeDefinition.getId(), routeDefinition));
+        return routeDefinitionMap.size() == routeDefinitionList.size() ? routeDefinitionList
+                : new ArrayList<>(routeDefinitionMap.values());
+    }
+
+    private boolean matches(RouteDefinition routeDefinition, RouteListParam listParam) {
+        if (StrUtil.isNotBlank(listParam.getRouteId())
+                && !StrUtil.startWith(routeDefinition.getId(), listParam.getRouteId())) {
+            return false;
+        }
+        if (StrUtil.isNotBlank(listParam.getUri())
+                && !StrUtil.contains(String.valueOf(routeDefinition.getUri()), listParam.getUri())) {
+            return false;
+        }
+        return StrUtil.isBlank(listParam.getPredicate()) || routeDefinition.getPredicates().stream()
+                .anyMatch(predicate -> listParam.getPredicate().equalsIgnoreCase(predicate.getName()));
+    }
+
+    /**
+     * 校验批量变更
+     *
+     * @param routeChangeList
+     * @return 第一条不合法变更的说明,全部合法时返回 null
+     */
+    private String validateChanges(List<RouteChange> routeChangeList) {
+        for (int i = 0; i < routeChangeList.size(); i++) {
+            RouteChange routeChange = routeChangeList.get(i);
+            if (routeChange == null || routeChange.getOperation() == null) {
+                return StrUtil.format("第 {} 条路由变更缺少操作类型", i + 1);
+            }
+            if (routeChange.getOperation() == RouteChange.Operation.DELETE) {
+                if (StrUtil.isBlank(routeChange.getRouteId())) {
+                    return StrUtil.format("第 {} 条路由变更缺少路由 ID", i + 1);
+                }
+                continue;
+            }
+            RouteDefinition routeDefinition = routeChange.getRouteDefinition();
+            if (routeDefinition == null || StrUtil.isBlank(routeDefinition.getId()) || routeDefinition.getUri() == null) {
+                return StrUtil.format("第 {} 条路由变更缺少路由或路由 ID、URI", i + 1);
+            }
+        }
+        return null;
+    }
+
+    private String getRouteId(RouteChange routeChange) {
+        return routeChange.getOperation() == RouteChange.Operation.DELETE ? routeChange.getRouteId()
+                : routeChange.getRouteDefinition().getId();
+    }
+
+    private Mono<Void> applyChange(RouteChange routeChange) {
+        switch (routeChange.getOperation()) {
+            case ADD:
+                return dbRouteRepository.save(Mono.just(routeChange.getRouteDefinition()));
+            case UPDATE:
+                return dbRouteRepository.update(Mono.just(routeChange.getRouteDefinition()));
+            case DELETE:
+                return dbRouteRepository.delete(Mono.just(routeChange.getRouteId()));
+            default:
+                return Mono.error(new IllegalArgumentException("不支持的路由操作类型: " + routeChange.getOperation()));
+        }
     }
 
 }
@@ -0,0 +1,54 @@
+package org.jiabin.gateway.filter.practice.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jiabin.gateway.filter.practice.common.component.CacheChangePublisher;
+import org.jiabin.gateway.filter.practice.common.component.ReactiveRedisComponent;
+import org.jiabin.gateway.filter.practice.common.component.TokenValidator;
+import org.jiabin.gateway.filter.practice.common.constant.CacheChangeConst;
+import org.jiabin.gateway.filter.practice.common.constant.RedisKeyConst;
+import org.jiabin.gateway.filter.practice.model.TokenRevokeParam;
+import org.jiabin.gateway.filter.practice.service.TokenService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * @Description: 网关 token 业务实现类
+ * token 由认证服务签发并写入 redis, key: REDIS_KEY_GATEWAY_TOKEN:{token}, value: 登录主体, 过期时间即 token 有效期,
+ * 网关只校验不签发; 注销时删除 key 并通知所有网关节点移除本地校验结果
+ * @author jiabin.yu
+ * @Date: 2022/8/23
+ */
+@Slf4j
+@Service
+public class TokenServiceImpl implements TokenService {
+
+    @Autowired
+    private ReactiveRedisComponent reactiveRedisComponent;
+    @Autowired
+    private TokenValidator tokenValidator;
+    @Autowired
+    private CacheChangePublisher cacheChangePublisher;
+
+    /**
+     * 注销 token
+     * 删除 redis 中的 token 后移除本节点缓存的校验结果,并通知其他节点
+     *
+     * @param revokeParam
+     * @return
+     */
+    @Override
+    public Mono<Boolean> revoke(TokenRevokeParam revokeParam) {
+        String token = revokeParam.getToken();
+        return reactiveRedisComponent.remove(RedisKeyConst.KEY_GATEWAY_TOKEN_PREFIX + token)
+                .defaultIfEmpty(Boolean.FALSE)
+                .flatMap(removed -> {
+                    tokenValidator.invalidate(token);
+                    return cacheChangePublisher.publishReactive(CacheChangeConst.TYPE_TOKEN,
+                                    CacheChangeConst.OPERATION_REMOVE, token, null)
+                            .thenReturn(removed);
+                })
+                .doOnError(e -> log.error("注销 token 失败", e));
+    }
+
+}
@@ -2,14 +2,17 @@ package org.jiabin.gateway.filter.practice.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import org.jiabin.gateway.filter.practice.common.api.ApiResult;
+import org.jiabin.gateway.filter.practice.common.api.CursorPage;
+import org.jiabin.gateway.filter.practice.common.component.CacheChangePublisher;
 import org.jiabin.gateway.filter.practice.common.component.RedisComponent;
+import org.jiabin.gateway.filter.practice.common.component.WhiteListCache;
+import org.jiabin.gateway.filter.practice.common.constant.CacheChangeConst;
 import org.jiabin.gateway.filter.practice.common.constant.RedisKeyConst;
 import org.jiabin.gateway.filter.practice.dao.WhiteListMapper;
 import org.jiabin.gateway.filter.practice.model.*;
@@ -19,7 +22,17 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * @Description: 网关路由白名单业务实现类
@@ -29,8 +42,27 @@ import java.util.Objects;
 @Service
 public class WhiteListServiceImpl extends ServiceImpl<WhiteListMapper, WhiteListEntity> implements WhiteListService {
 
+    /**
+     * 默认每页条数
+     */
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * 每页最大条数
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * 批量写入时每批数量
+     */
+    private static final int BATCH_SIZE = 500;
+
     @Autowired
     private RedisComponent redisComponent;
+    @Autowired
+    private WhiteListCache whiteListCache;
+    @Autowired
+    private CacheChangePublisher cacheChangePublisher;
 
     /**
      * 新增单条
@@ -48,6 +80,9 @@ public class WhiteListServiceImpl extends ServiceImpl<WhiteListMapper, WhiteList
         whiteListParam.setUpdateDate(nowTime);
         this.save(whiteListParam);
         redisComponent.mapPut(RedisKeyConst.KEY_GATEWAY_WHITE_LIST, whiteListParam.getId().toString(), whiteListParam);
+        whiteListCache.put(whiteListParam);
+        cacheChangePublisher.publishPut(CacheChangeConst.TYPE_WHITE_LIST, whiteListParam.getId().toString(),
+                whiteListParam);
         return ApiResult.success(whiteListParam);
     }
 
@@ -63,25 +98,65 @@ public class WhiteListServiceImpl extends ServiceImpl<WhiteListMapper, WhiteList
                 infoParam.getId().toString(), WhiteListEntity.class);
         if (Objects.isNull(whiteList)) {
             whiteList = this.getById(infoParam.getId());
+            // 回写缓存,后续查询不再访问数据库
+            if (Objects.nonNull(whiteList)) {
+                redisComponent.mapPut(RedisKeyConst.KEY_GATEWAY_WHITE_LIST, whiteList.getId().toString(), whiteList);
+            }
         }
         return ApiResult.success(whiteList);
     }
 
     /**
-     * 分页查询
+     * 游标分页查询
+     * 按路径前缀查询时按 (路径, id) 排序,游标为上一页最后一条记录的 (路径, id); 否则按 id 排序,游标为 id
      *
      * @param pageParam
      * @return
      */
     @Override
     public ApiResult page(WhiteListPageParam pageParam) {
-        IPage<WhiteListEntity> page = new Page<>(pageParam.getCurrentPage(), pageParam.getPageSize());
-        LambdaQueryWrapper<WhiteListEntity> queryWrapper = Wrappers.lambdaQuery();
-        queryWrapper.eq(StrUtil.isNotBlank(pageParam.getRouteType()), WhiteListEntity::getRouteType,
-                        pageParam.getRouteType())
-                .like(StrUtil.isNotBlank(pageParam.getPath()), WhiteListEntity::getPath, pageParam.getPath())
-                .like(StrUtil.isNotBlank(pageParam.getComment()), WhiteListEntity::getComment, pageParam.getComment());
-        return ApiResult.success(this.page(page, queryWrapper));
+        int pageSize = pageParam.getPageSize() == null || pageParam.getPageSize() <= 0
+                ? DEFAULT_PAGE_SIZE : Math.min(pageParam.getPageSize(), MAX_PAGE_SIZE);
+        boolean searchByPath = StrUtil.isNotBlank(pageParam.getPath());
+        PageCursor cursor = null;
+        if (StrUtil.isNotBlank(pageParam.getCursor())) {
+            cursor = PageCursor.decode(pageParam.getCursor());
+            if (cursor == null || searchByPath != (cursor.path != null)) {
+                return ApiResult.fail("游标无效");
+            }
+        }
+        List<WhiteListEntity> whiteListList;
+        if (searchByPath) {
+            // 路径按前缀匹配,从本地有序索引中按路径顺序查询,多查一条用于判断是否有下一页
+            whiteListList = whiteListCache.searchByPathPrefix(pageParam.getPath(),
+                    cursor == null ? null : cursor.path, cursor == null ? null : cursor.id,
+                    whiteList -> (StrUtil.isBlank(pageParam.getRouteType())
+                            || pageParam.getRouteType().equals(whiteList.getRouteType()))
+                            && (StrUtil.isBlank(pageParam.getComment())
+                            || StrUtil.contains(whiteList.getComment(), pageParam.getComment())),
+                    pageSize + 1);
+        } else {
+            // 按 id 游标分页,多查一条用于判断是否有下一页
+            LambdaQueryWrapper<WhiteListEntity> queryWrapper = Wrappers.lambdaQuery();
+            queryWrapper.gt(WhiteListEntity::getId, cursor == null ? 0L : cursor.id)
+                    .eq(StrUtil.isNotBlank(pageParam.getRouteType()), WhiteListEntity::getRouteType,
+                            pageParam.getRouteType())
+                    .like(StrUtil.isNotBlank(pageParam.getComment()), WhiteListEntity::getComment,
+                            pageParam.getComment())
+                    .orderByAsc(WhiteListEntity::getId)
+                    .last("limit " + (pageSize + 1));
+            whiteListList = this.list(queryWrapper);
+        }
+        boolean hasMore = whiteListList.size() > pageSize;
+        if (hasMore) {
+            whiteListList = whiteListList.subList(0, pageSize);
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            WhiteListEntity last = whiteListList.get(whiteListList.size() - 1);
+            nextCursor = PageCursor.encode(last.getId(), searchByPath ? last.getPath() : null);
+        }
+        return ApiResult.success(new CursorPage<>(whiteListList, nextCursor, hasMore));
     }
 
     /**
@@ -99,8 +174,11 @@ public class WhiteListServiceImpl extends ServiceImpl<WhiteListMapper, WhiteList
         whiteListParam.setUpdateDate(nowTime);
         boolean flag = this.updateById(whiteListParam);
         if (flag) {
-            redisComponent.mapPut(RedisKeyConst.KEY_GATEWAY_WHITE_LIST, whiteListParam.getId().toString(),
-                    whiteListParam);
+            // 更新参数只包含部分字段,重新查询完整记录后再写入缓存
+            WhiteListEntity whiteList = this.getById(whiteListParam.getId());
+            redisComponent.mapPut(RedisKeyConst.KEY_GATEWAY_WHITE_LIST, whiteList.getId().toString(), whiteList);
+            whiteListCache.put(whiteList);
+            cacheChangePublisher.publishPut(CacheChangeConst.TYPE_WHITE_LIST, whiteList.getId().toString(), whiteList);
         }
         return ApiResult.success(flag);
     }
@@ -117,7 +195,141 @@ public class WhiteListServiceImpl extends ServiceImpl<WhiteListMapper, WhiteList
         boolean flag = this.removeById(deleteParam.getId());
         if (flag) {
             redisComponent.mapRemove(RedisKeyConst.KEY_GATEWAY_WHITE_LIST, deleteParam.getId().toString());
+            whiteListCache.remove(deleteParam.getId());
+            cacheChangePublisher.publishRemove(CacheChangeConst.TYPE_WHITE_LIST, deleteParam.getId().toString());
         }
         return ApiResult.success(flag);
     }
+
+    /**
+     * 批量导入
+     * 按 路由类型+路径 去重: 重复时以最后一条为准,数据库中已存在的记录原地更新,其余新增;
+     * 全部记录在同一个事务内分批(JDBC batch)写入,任一条失败时整体回滚。不写入缓存,提交后调用 cacheImported
+     *
+     * @param whiteListList
+     * @return 写入的白名单
+     */
+    @Override
+    @Transactional(propagation = Propagation.REQUIRED, rollbackFor = {Exception.class})
+    public List<WhiteListEntity> importAll(List<WhiteListEntity> whiteListList) {
+        if (whiteListList.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, WhiteListEntity> importMap = new LinkedHashMap<>(whiteListList.size() * 2);
+        whiteListList.forEach(whiteList -> importMap.put(uniqueKey(whiteList), whiteList));
+        List<String> pathList = importMap.values().stream().map(WhiteListEntity::getPath).distinct()
+                .collect(Collectors.toList());
+        Map<String, WhiteListEntity> existingMap = new HashMap<>(importMap.size() * 2);
+        for (List<String> batchPathList : CollUtil.split(pathList, BATCH_SIZE)) {
+            this.list(Wrappers.<WhiteListEntity>lambdaQuery().in(WhiteListEntity::getPath, batchPathList))
+                    .forEach(existing -> existingMap.putIfAbsent(uniqueKey(existing), existing));
+        }
+        long nowTime = System.currentTimeMillis();
+        List<WhiteListEntity> insertList = new ArrayList<>();
+        List<WhiteListEntity> updateList = new ArrayList<>();
+        importMap.forEach((key, whiteList) -> {
+            WhiteListEntity existing = existingMap.get(key);
+            whiteList.setUpdateDate(nowTime);
+            if (existing == null) {
+                whiteList.setId(null);
+                whiteList.setCreateDate(nowTime);
+                insertList.add(whiteList);
+            } else {
+                whiteList.setId(existing.getId());
+                whiteList.setCreateDate(existing.getCreateDate());
+                updateList.add(whiteList);
+            }
+        });
+        if (!insertList.isEmpty()) {
+            this.saveBatch(insertList, BATCH_SIZE);
+        }
+        if (!updateList.isEmpty()) {
+            this.updateBatchById(updateList, BATCH_SIZE);
+        }
+        return new ArrayList<>(importMap.values());
+    }
+
+    /**
+     * 批量导入提交后写入缓存: 管道分批 HMSET(一次网络往返),更新本地索引,再发布一次变更通知,其他节点收到后全量同步
+     *
+     * @param whiteListList
+     */
+    @Override
+    public void cacheImported(List<WhiteListEntity> whiteListList) {
+        if (whiteListList.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, Object> whiteListMap = new HashMap<>(whiteListList.size() * 2);
+            whiteListList.forEach(whiteList -> whiteListMap.put(whiteList.getId().toString(), whiteList));
+            redisComponent.mapPutPipelined(RedisKeyConst.KEY_GATEWAY_WHITE_LIST, whiteListMap, BATCH_SIZE);
+            whiteListCache.putAll(whiteListList);
+        } finally {
+            // 数据库已提交,写入缓存失败时同样需要通知其他节点同步
+            cacheChangePublisher.publishReload(CacheChangeConst.TYPE_WHITE_LIST);
+        }
+    }
+
+    /**
+     * 按 id 升序查询游标之后的记录
+     *
+     * @param cursor 游标(上一批最后一条记录的 id)
+     * @param limit 查询条数
+     * @return
+     */
+    @Override
+    public List<WhiteListEntity> listAfter(Long cursor, int limit) {
+        return this.list(Wrappers.<WhiteListEntity>lambdaQuery()
+                .gt(WhiteListEntity::getId, cursor == null ? 0L : cursor)
+                .orderByAsc(WhiteListEntity::getId)
+                .last("limit " + limit));
+    }
+
+    /**
+     * 白名单唯一键: 路由类型+路径
+     *
+     * @param whiteList
+     * @return
+     */
+    private String uniqueKey(WhiteListEntity whiteList) {
+        return whiteList.getRouteType() + StrUtil.COLON + whiteList.getPath();
+    }
+
+    /**
+     * 分页游标,编码为 URL 安全的 Base64: 按 id 分页时为 "{id}",按路径分页时为 "{id}:{path}"
+     */
+    private static final class PageCursor {
+
+        private final Long id;
+
+        private final String path;
+
+        private PageCursor(Long id, String path) {
+            this.id = id;
+            this.path = path;
+        }
+
+        private static String encode(Long id, String path) {
+            String value = path == null ? String.valueOf(id) : id + ":" + path;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * 解码游标
+         *
+         * @param cursor
+         * @return 格式不正确时返回 null
+         */
+        private static PageCursor decode(String cursor) {
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = value.indexOf(':');
+                return separator < 0 ? new PageCursor(Long.valueOf(value), null)
+                        : new PageCursor(Long.valueOf(value.substring(0, separator)), value.substring(separator + 1));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
 }
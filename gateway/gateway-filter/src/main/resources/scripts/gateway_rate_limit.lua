@@ -0,0 +1,33 @@
+-- 令牌桶限流,一次申请一批令牌供网关节点在本地消费
+-- KEYS[1]: 令牌桶 key
+-- ARGV[1]: 每秒补充令牌数
+-- ARGV[2]: 令牌桶容量
+-- ARGV[3]: 当前时间(毫秒)
+-- ARGV[4]: 申请令牌数
+-- 返回实际获得的令牌数
+local key = KEYS[1]
+local rate = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local now = tonumber(ARGV[3])
+local requested = tonumber(ARGV[4])
+
+local bucket = redis.call('HMGET', key, 'tokens', 'ts')
+local tokens = tonumber(bucket[1])
+local ts = tonumber(bucket[2])
+if tokens == nil or ts == nil then
+    tokens = capacity
+    ts = now
+end
+
+-- 各节点时钟可能存在偏差,时间不回退
+if now > ts then
+    tokens = math.min(capacity, tokens + (now - ts) * rate / 1000)
+    ts = now
+end
+
+local granted = math.min(requested, math.floor(tokens))
+tokens = tokens - granted
+
+redis.call('HMSET', key, 'tokens', tokens, 'ts', ts)
+redis.call('PEXPIRE', key, math.ceil(capacity / rate * 1000) * 2)
+return granted